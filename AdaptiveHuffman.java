@@ -0,0 +1,215 @@
+package huffman;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Single-pass Huffman coding of streams. Instead of counting the whole input first,
+ * the encoder and the decoder both start from equal counts for every byte and rebuild
+ * the same canonical code from the counts seen so far after every window of bytes, so
+ * no code table is ever sent and the input is never buffered in full.
+ *
+ * Besides the 256 byte values the code has two control symbols: EOF ends the stream,
+ * and FLUSH marks a point where Encoder.flush() was called and everything written
+ * before it was sent. After FLUSH the stream is padded to a byte boundary. The decoder
+ * never reads past the end of a code, so it returns everything before a FLUSH or EOF
+ * as soon as those bytes arrive, even if the stream stays open.
+ *
+ * The stream starts with the magic number "HUFA".
+ */
+public class AdaptiveHuffman {
+    private static final int MAGIC = 0x48554641; // "HUFA"
+    private static final int EOF = 256;
+    private static final int FLUSH = 257;
+    private static final int SYMBOLS = 258;
+    private static final int MAX_CODE_LENGTH = 15;
+    private static final int FIRST_WINDOW = 256;    // bytes before the first rebuild
+    private static final int MAX_WINDOW = 8192;     // windows double up to this size
+    private static final long MAX_TOTAL = 1 << 20;  // counts are halved above this total
+
+    private final long[] counts = new long[SYMBOLS];
+    private final int[] lengths = new int[SYMBOLS];
+    private final CodeLengths codeLengths = new CodeLengths(SYMBOLS);
+    private CanonicalCode code;
+    private long total;
+    private int window = FIRST_WINDOW;
+    private int untilRebuild = FIRST_WINDOW;
+
+    private AdaptiveHuffman() {
+        for (int symbol = 0; symbol < SYMBOLS; symbol++) counts[symbol] = 1;
+        total = SYMBOLS;
+        rebuild();
+    }
+
+    /**
+     * Encodes in until its end in one pass and ends the stream with EOF. Output is
+     * flushed only when the encoder's buffer fills and at the end; use Encoder to
+     * choose the flush points of an interactive stream. Neither stream needs to be
+     * buffered, and neither is closed.
+     *
+     * @param in The bytes to encode
+     * @param out Where the encoded stream is written
+     */
+    public static void encode(InputStream in, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder(out);
+        byte[] buffer = new byte[1 << 16];
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+            encoder.write(buffer, 0, n);
+        }
+        encoder.finish();
+    }
+
+    /**
+     * Decodes a stream written by encode() or an Encoder up to its EOF symbol, flushing
+     * out at every point where the encoder flushed. Neither stream needs to be buffered, and neither
+     * is closed.
+     *
+     * @param in The encoded stream
+     * @param out Where the decoded bytes are written
+     * @throws IOException if the encoded stream is not valid or ends early
+     */
+    public static void decode(InputStream in, OutputStream out) throws IOException {
+        if (new DataInputStream(in).readInt() != MAGIC) throw new IOException("Not an adaptive Huffman stream");
+        AdaptiveHuffman model = new AdaptiveHuffman();
+        DecodeTable table = model.code.newDecodeTable();
+        BitReader reader = new BitReader(in);
+        byte[] buffer = new byte[1 << 16];
+        int n = 0;
+        while (true) {
+            int symbol = table.read(reader);
+            if (symbol < 256) {
+                buffer[n++] = (byte) symbol;
+                if (n == buffer.length) {
+                    out.write(buffer, 0, n);
+                    n = 0;
+                }
+                if (model.update(symbol)) table = model.code.newDecodeTable();
+            }
+            else if (symbol == FLUSH) {
+                reader.alignToByte();
+                out.write(buffer, 0, n);
+                out.flush();
+                n = 0;
+            }
+            else if (symbol == EOF) {
+                break;
+            }
+            else {
+                throw new IOException("Invalid symbol " + symbol);
+            }
+        }
+        out.write(buffer, 0, n);
+        out.flush();
+    }
+
+    /*
+     * Counts a byte, rebuilding the code at the end of a window
+     * @return true if the code was rebuilt
+     */
+    private boolean update(int symbol) {
+        counts[symbol]++;
+        total++;
+        if (--untilRebuild > 0) return false;
+        if (total > MAX_TOTAL) {
+            total = 0;
+            for (int s = 0; s < SYMBOLS; s++) {
+                counts[s] = (counts[s] + 1) / 2;
+                total += counts[s];
+            }
+        }
+        window = Math.min(2 * window, MAX_WINDOW);
+        untilRebuild = window;
+        rebuild();
+        return true;
+    }
+
+    private void rebuild() {
+        codeLengths.compute(counts, MAX_CODE_LENGTH, lengths);
+        code = new CanonicalCode(lengths);
+    }
+
+    /**
+     * An output stream that adaptive Huffman codes the bytes written to it, for streams
+     * whose reader should see data at points the writer chooses. flush() ends the bytes
+     * written so far with a FLUSH symbol and sends them; finish() ends the stream with EOF.
+     */
+    public static class Encoder extends FilterOutputStream {
+        private final AdaptiveHuffman model = new AdaptiveHuffman();
+        private final BitWriter writer;
+        private long[] codes;
+        private boolean written;    // bytes were written since the last FLUSH
+        private boolean finished;
+
+        /**
+         * Writes the stream's magic number to out
+         *
+         * @param out The stream the encoded bits are written to
+         */
+        public Encoder(OutputStream out) throws IOException {
+            super(out);
+            new DataOutputStream(out).writeInt(MAGIC);
+            writer = new BitWriter(out);
+            codes = model.code.getCodes();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            encode(b & 0xFF);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            for (int i = off; i < off + len; i++) encode(b[i] & 0xFF);
+        }
+
+        /**
+         * Sends everything written so far and flushes the underlying stream, so a
+         * decoder returns those bytes without waiting for more
+         */
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            if (written) {
+                writer.writeBits(codes[FLUSH], model.lengths[FLUSH]);
+                written = false;
+            }
+            writer.finish();
+        }
+
+        /**
+         * Ends the stream with EOF without closing the underlying stream
+         */
+        public void finish() throws IOException {
+            if (finished) return;
+            writer.writeBits(codes[EOF], model.lengths[EOF]);
+            writer.finish();
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            }
+            finally {
+                out.close();
+            }
+        }
+
+        private void encode(int symbol) throws IOException {
+            writer.writeBits(codes[symbol], model.lengths[symbol]);
+            written = true;
+            if (model.update(symbol)) codes = model.code.getCodes();
+        }
+
+        private void ensureOpen() throws IOException {
+            if (finished) throw new IOException("Stream finished");
+        }
+    }
+}
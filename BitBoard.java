@@ -0,0 +1,726 @@
+package conwaygame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Bit-packed Game of Life board. Each row is stored as a run of 64-bit words
+ * (bit b of word w is column 64*w + b), and a generation is computed 64 cells
+ * at a time with a bitwise full-adder neighbor count instead of per-cell lookups.
+ *
+ * The board wraps around its edges exactly like GameOfLife: row -1 is the last
+ * row and column -1 is the last column. Like GameOfLife, the rule can be any
+ * Life-like LifeRule and the edges can be made DEAD instead with setToroidal(false).
+ *
+ * With change tracking on, the board is split into tiles of TILE_ROWS rows by one
+ * word (64 columns) and only tiles that changed in the last generation, or that
+ * touch such a tile, are recomputed. Settled regions then cost nothing per generation.
+ *
+ * With cycle detection on, nextGeneration(n) keeps a 64-bit hash of every generation
+ * in a bounded history. Once a generation repeats, the remaining generations are
+ * reduced modulo the period, so still lifes and oscillators finish immediately.
+ */
+public class BitBoard
+{
+
+    private static final int MIN_BAND_ROWS = 16; // smallest row band handed to a single fork/join task
+    private static final int TILE_ROWS = 32;     // rows per tile when change tracking is on
+    private static final int HISTORY_LIMIT = 1 << 16; // generation hashes kept for cycle detection
+
+    private final int rows;
+    private final int cols;
+    private final int wordsPerRow;
+    private final int tailBits;  // number of valid bits in the last word of a row (1..64)
+    private final long tailMask; // mask of the valid bits in the last word of a row
+
+    private LifeRule rule = LifeRule.CONWAY;
+    private boolean toroidal = true; // edges wrap around, otherwise cells past them are DEAD
+
+    private long[] cells;        // current generation, rows * wordsPerRow words
+    private long[] next;         // scratch buffer the next generation is written into
+    private long totalAliveCells;
+
+    private boolean changeTracking;
+    private final int tileRows;      // number of tile rows, a tile column is one word wide
+    private int[] changedTiles;      // tiles that changed in the last generation
+    private int changedCount;
+    private boolean[] inChanged;     // marks tiles already listed in changedTiles
+    private int[] activeTiles;       // tiles to recompute in the coming generation
+    private boolean[] marked;        // marks tiles already queued in activeTiles
+
+    private long generation;         // number of generations advanced so far
+    private long hash;               // XOR of mixWord over all words, valid when hashValid
+    private boolean hashValid;
+    private boolean cycleDetection;
+    private HashMap<Long, Long> history; // generation hash -> first generation seen with it
+    private long period;             // detected period, 0 while no cycle has been found
+    private long transientLength;    // first generation of the detected cycle
+
+    /**
+     * Creates an empty (all DEAD) board
+     * @param rows number of rows in the board
+     * @param cols number of columns in the board
+     */
+    public BitBoard (int rows, int cols) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Board must have at least one row and one column");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        wordsPerRow = (cols + 63) >>> 6;
+        tailBits = cols - ((wordsPerRow - 1) << 6);
+        tailMask = tailBits == 64 ? -1L : (1L << tailBits) - 1;
+        cells = new long[rows * wordsPerRow];
+        next = new long[rows * wordsPerRow];
+        tileRows = (rows + TILE_ROWS - 1) / TILE_ROWS;
+    }
+
+    /**
+     * Creates a board holding the same pattern as a GameOfLife grid
+     * @param grid boolean grid where true denotes an ALIVE cell
+     */
+    public BitBoard (boolean[][] grid) {
+        this(grid.length, grid[0].length);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (grid[i][j]) {
+                    cells[i * wordsPerRow + (j >>> 6)] |= 1L << j;
+                    totalAliveCells++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows
+     * @return int for number of rows in the board
+     */
+    public int getRows () {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns
+     * @return int for number of columns in the board
+     */
+    public int getCols () {
+        return cols;
+    }
+
+    /**
+     * Returns totalAliveCells
+     * @return long for total number of alive cells in the board
+     */
+    public long getTotalAliveCells () {
+        return totalAliveCells;
+    }
+
+    /**
+     * Returns the status of the cell at (row,col): ALIVE or DEAD
+     * @param row row position of the cell
+     * @param col column position of the cell
+     * @return true or false value "ALIVE" or "DEAD" (state of the cell)
+     */
+    public boolean getCellState (int row, int col) {
+        checkCell(row, col);
+        return (cells[row * wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Sets the status of the cell at (row,col)
+     * @param row row position of the cell
+     * @param col column position of the cell
+     * @param alive true to make the cell ALIVE, false to make it DEAD
+     */
+    public void setCellState (int row, int col, boolean alive) {
+        checkCell(row, col);
+        int index = row * wordsPerRow + (col >>> 6);
+        long bit = 1L << col;
+        boolean wasAlive = (cells[index] & bit) != 0;
+        if (wasAlive == alive) {
+            return;
+        }
+        if (hashValid) {
+            hash ^= mixWord(index, cells[index]) ^ mixWord(index, cells[index] ^ bit);
+        }
+        cells[index] ^= bit;
+        totalAliveCells += alive ? 1 : -1;
+        boardEdited();
+        if (changeTracking) {
+            markChanged((row / TILE_ROWS) * wordsPerRow + (col >>> 6));
+        }
+    }
+
+    /**
+     * Turns change tracking on or off. While it is on, each generation only recomputes
+     * the tiles that changed in the previous generation and the tiles around them.
+     * @param on true to only recompute tiles near changes, false to recompute every cell
+     */
+    public void setChangeTracking (boolean on) {
+        if (on && !changeTracking) {
+            int tiles = tileRows * wordsPerRow;
+            changedTiles = new int[tiles];
+            activeTiles = new int[tiles];
+            marked = new boolean[tiles];
+            inChanged = new boolean[tiles];
+            markAllChanged();
+        }
+        else if (!on) {
+            changedTiles = null;
+            activeTiles = null;
+            marked = null;
+            inChanged = null;
+        }
+        changeTracking = on;
+    }
+
+    /**
+     * Returns whether change tracking is on
+     * @return true if generations only recompute tiles near changes
+     */
+    public boolean isChangeTracking () {
+        return changeTracking;
+    }
+
+    /**
+     * Sets the birth/survival rule used to compute new generations
+     * @param rule the rule, for example LifeRule.parse("B36/S23")
+     */
+    public void setRule (LifeRule rule) {
+        this.rule = rule;
+        rulesChanged();
+    }
+
+    /**
+     * Returns the birth/survival rule used to compute new generations
+     * @return LifeRule for the current rule
+     */
+    public LifeRule getRule () {
+        return rule;
+    }
+
+    /**
+     * Sets whether the edges of the board wrap around
+     * @param toroidal true for wraparound edges, false for DEAD edges
+     */
+    public void setToroidal (boolean toroidal) {
+        this.toroidal = toroidal;
+        rulesChanged();
+    }
+
+    /**
+     * Returns whether the edges of the board wrap around
+     * @return true for wraparound edges, false for DEAD edges
+     */
+    public boolean isToroidal () {
+        return toroidal;
+    }
+
+    /*
+     * Settled tiles and recorded generations may evolve differently under new rules
+     */
+    private void rulesChanged () {
+        if (changeTracking) {
+            markAllChanged();
+        }
+        boardEdited();
+    }
+
+    /**
+     * Turns cycle detection on or off. While it is on, nextGeneration(n) records a hash
+     * of every generation and skips ahead once the board repeats an earlier generation.
+     * @param on true to detect still lifes and oscillators during nextGeneration(n)
+     */
+    public void setCycleDetection (boolean on) {
+        cycleDetection = on;
+        history = on ? new HashMap<Long, Long>() : null;
+        period = 0;
+    }
+
+    /**
+     * Returns the number of generations advanced since the board was created
+     * @return long for the current generation number
+     */
+    public long getGeneration () {
+        return generation;
+    }
+
+    /**
+     * Returns the period of the cycle the board has settled into: 1 for a still life,
+     * 2 for a blinker, and so on
+     * @return long for the detected period, 0 if no cycle has been detected
+     */
+    public long getDetectedPeriod () {
+        return period;
+    }
+
+    /**
+     * Returns the number of generations it took to reach the detected cycle
+     * (the first generation recorded with the repeating pattern)
+     * @return long for the transient length, only meaningful when a period was detected
+     */
+    public long getTransientLength () {
+        return transientLength;
+    }
+
+    /**
+     * Returns true if there are any alive cells in the board
+     * @return true if there is at least one cell alive, otherwise returns false
+     */
+    public boolean isAlive () {
+        return totalAliveCells > 0;
+    }
+
+    /**
+     * Returns a copy of the board in the GameOfLife grid representation
+     * @return boolean[][] where true denotes an ALIVE cell (this is a new 2D array)
+     */
+    public boolean[][] getGrid () {
+        boolean[][] grid = new boolean[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                grid[i][j] = (cells[i * wordsPerRow + (j >>> 6)] & (1L << j)) != 0;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Advances the board by one generation
+     */
+    public void nextGeneration () {
+        if (changeTracking) {
+            stepChangedTiles();
+        }
+        else {
+            totalAliveCells = stepRows(cells, next, 0, rows);
+            hashValid = false;
+        }
+        long[] temp = cells;
+        cells = next;
+        next = temp;
+        generation++;
+    }
+
+    /**
+     * Advances the board by multiple (n) generations
+     * @param n number of generations to advance
+     */
+    public void nextGeneration (int n) {
+        nextGeneration((long) n);
+    }
+
+    /**
+     * Advances the board by multiple (n) generations. With cycle detection on, the
+     * generations left once a cycle is found are reduced modulo its period.
+     * @param n number of generations to advance
+     */
+    public void nextGeneration (long n) {
+        long remaining = n;
+        while (remaining > 0) {
+            if (period > 0) {
+                long skipped = remaining - remaining % period;
+                generation += skipped;
+                remaining -= skipped;
+                for (; remaining > 0; remaining--) {
+                    nextGeneration();
+                }
+                return;
+            }
+            nextGeneration();
+            remaining--;
+            if (cycleDetection) {
+                remaining = recordGeneration(remaining);
+            }
+        }
+    }
+
+    /**
+     * Advances the board by multiple (n) generations, splitting every generation into
+     * row bands that are computed in parallel on the common ForkJoinPool
+     * @param n number of generations to advance
+     */
+    public void nextGenerationParallel (int n) {
+        nextGenerationParallel(n, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Advances the board by multiple (n) generations, splitting every generation into
+     * row bands that are computed in parallel on the given pool.
+     *
+     * Every band reads the rows just above and below it (wrapping around the torus)
+     * straight out of the current buffer, which is left untouched until all bands of
+     * the generation have finished, so the halo rows never need to be copied. The two
+     * preallocated buffers then swap roles for the next generation.
+     * @param n number of generations to advance
+     * @param pool the pool the row bands run on
+     */
+    public void nextGenerationParallel (int n, ForkJoinPool pool) {
+        int bandRows = Math.max(MIN_BAND_ROWS, rows / (pool.getParallelism() * 4));
+        for (int i = 0; i < n; i++) {
+            totalAliveCells = pool.invoke(new BandTask(this, cells, next, 0, rows, bandRows));
+            long[] temp = cells;
+            cells = next;
+            next = temp;
+            generation++;
+        }
+        if (n > 0) {
+            hashValid = false;
+            if (changeTracking) {
+                markAllChanged();
+            }
+        }
+    }
+
+    /**
+     * Computes rows [from, to) of the generation after src and stores them in dst
+     * @return number of alive cells in the computed rows
+     */
+    long stepRows (long[] src, long[] dst, int from, int to) {
+        long alive = 0;
+        for (int r = from; r < to; r++) {
+            int up = rowAbove(r);
+            int mid = r * wordsPerRow;
+            int down = rowBelow(r);
+            for (int w = 0; w < wordsPerRow; w++) {
+                long word = stepWord(src, up, mid, down, w);
+                dst[mid + w] = word;
+                alive += Long.bitCount(word);
+            }
+        }
+        return alive;
+    }
+
+    /*
+     * Live word array of the current generation, rows * wordsPerRow words, for loaders
+     * that fill the board in bulk. Call wordsChanged() after writing to it.
+     */
+    long[] words () {
+        return cells;
+    }
+
+    int getWordsPerRow () {
+        return wordsPerRow;
+    }
+
+    /*
+     * Recounts the alive cells after the words were written in bulk
+     */
+    void wordsChanged () {
+        long alive = 0;
+        for (int r = 0; r < rows; r++) {
+            int last = r * wordsPerRow + wordsPerRow - 1;
+            cells[last] &= tailMask;
+            for (int w = r * wordsPerRow; w <= last; w++) {
+                alive += Long.bitCount(cells[w]);
+            }
+        }
+        totalAliveCells = alive;
+        hashValid = false;
+        if (changeTracking) {
+            markAllChanged();
+        }
+        boardEdited();
+    }
+
+    /*
+     * Start of the row above row r, or -1 if it is past a DEAD edge
+     */
+    private int rowAbove (int r) {
+        if (r > 0) {
+            return (r - 1) * wordsPerRow;
+        }
+        return toroidal ? (rows - 1) * wordsPerRow : -1;
+    }
+
+    /*
+     * Start of the row below row r, or -1 if it is past a DEAD edge
+     */
+    private int rowBelow (int r) {
+        if (r < rows - 1) {
+            return (r + 1) * wordsPerRow;
+        }
+        return toroidal ? 0 : -1;
+    }
+
+    /*
+     * Computes the next generation of a single word, given the start of the rows
+     * above (up), at (mid) and below (down) the word's row. A row start of -1 is a
+     * row of DEAD cells past the edge of the board.
+     */
+    private long stepWord (long[] src, int up, int mid, int down, int w) {
+        long nw = 0, n = 0, ne = 0, sw = 0, s = 0, se = 0;
+        if (up >= 0) {
+            nw = west(src, up, w);
+            n = src[up + w];
+            ne = east(src, up, w);
+        }
+        if (down >= 0) {
+            sw = west(src, down, w);
+            s = src[down + w];
+            se = east(src, down, w);
+        }
+        long word = evolve(rule, nw, n, ne, west(src, mid, w), src[mid + w], east(src, mid, w), sw, s, se);
+        if (w == wordsPerRow - 1) {
+            word &= tailMask;
+        }
+        return word;
+    }
+
+    /*
+     * Computes the next generation into the next buffer, recomputing only the tiles
+     * that changed last generation and their eight neighbors (wrapping around the torus).
+     *
+     * A tile that did not change last generation holds the same words in both buffers,
+     * so a tile that is skipped already holds its next generation in the next buffer.
+     * totalAliveCells is adjusted by the difference in alive cells of each recomputed word.
+     */
+    private void stepChangedTiles () {
+        int activeCount = 0;
+        for (int i = 0; i < changedCount; i++) {
+            inChanged[changedTiles[i]] = false;
+            int tileRow = changedTiles[i] / wordsPerRow;
+            int tileCol = changedTiles[i] % wordsPerRow;
+            for (int dr = -1; dr <= 1; dr++) {
+                int r = tileRow + dr;
+                r = r < 0 ? tileRows - 1 : (r >= tileRows ? 0 : r);
+                for (int dc = -1; dc <= 1; dc++) {
+                    int c = tileCol + dc;
+                    c = c < 0 ? wordsPerRow - 1 : (c >= wordsPerRow ? 0 : c);
+                    int tile = r * wordsPerRow + c;
+                    if (!marked[tile]) {
+                        marked[tile] = true;
+                        activeTiles[activeCount++] = tile;
+                    }
+                }
+            }
+        }
+
+        changedCount = 0;
+        for (int i = 0; i < activeCount; i++) {
+            int tile = activeTiles[i];
+            marked[tile] = false;
+            int w = tile % wordsPerRow;
+            int firstRow = (tile / wordsPerRow) * TILE_ROWS;
+            int lastRow = Math.min(firstRow + TILE_ROWS, rows);
+            boolean changed = false;
+            for (int r = firstRow; r < lastRow; r++) {
+                int up = rowAbove(r);
+                int mid = r * wordsPerRow;
+                int down = rowBelow(r);
+                long before = cells[mid + w];
+                long after = stepWord(cells, up, mid, down, w);
+                next[mid + w] = after;
+                if (before != after) {
+                    changed = true;
+                    totalAliveCells += Long.bitCount(after) - Long.bitCount(before);
+                    if (hashValid) {
+                        hash ^= mixWord(mid + w, before) ^ mixWord(mid + w, after);
+                    }
+                }
+            }
+            if (changed) {
+                inChanged[tile] = true;
+                changedTiles[changedCount++] = tile;
+            }
+        }
+    }
+
+    /*
+     * Records the hash of the generation just computed. If an earlier generation had the
+     * same hash, the board is advanced by the candidate period (counted against the
+     * remaining generations) and compared word for word with the current generation,
+     * so a hash collision can never be mistaken for a cycle.
+     * @return the number of generations still to advance
+     */
+    private long recordGeneration (long remaining) {
+        long current = boardHash();
+        Long seen = history.get(current);
+        if (seen == null) {
+            if (history.size() >= HISTORY_LIMIT) {
+                history.clear();
+            }
+            history.put(current, generation);
+            return remaining;
+        }
+
+        long candidate = generation - seen;
+        long[] snapshot = cells.clone();
+        long stepped = 0;
+        while (stepped < candidate && remaining > 0) {
+            nextGeneration();
+            stepped++;
+            remaining--;
+        }
+        if (stepped == candidate && Arrays.equals(cells, snapshot)) {
+            period = candidate;
+            transientLength = seen;
+        }
+        else {
+            history.put(current, generation - stepped);
+        }
+        return remaining;
+    }
+
+    /*
+     * Returns the hash of the current generation, recomputing it if a full step invalidated it
+     */
+    private long boardHash () {
+        if (!hashValid) {
+            long h = 0;
+            for (int i = 0; i < cells.length; i++) {
+                h ^= mixWord(i, cells[i]);
+            }
+            hash = h;
+            hashValid = true;
+        }
+        return hash;
+    }
+
+    /*
+     * Hash contribution of one word, so the board hash can be updated a word at a time
+     */
+    private static long mixWord (int index, long word) {
+        long h = word * 0x9E3779B97F4A7C15L + index * 0xC2B2AE3D27D4EB4FL;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /*
+     * Forgets the recorded history once the board is changed from outside, since
+     * earlier generations no longer lead to the current one
+     */
+    private void boardEdited () {
+        period = 0;
+        if (history != null) {
+            history.clear();
+        }
+    }
+
+    /*
+     * Records that a tile changed outside of a tracked generation step
+     */
+    private void markChanged (int tile) {
+        if (!inChanged[tile]) {
+            inChanged[tile] = true;
+            changedTiles[changedCount++] = tile;
+        }
+    }
+
+    /*
+     * Records every tile as changed, so the next generation recomputes the whole board
+     */
+    private void markAllChanged () {
+        changedCount = tileRows * wordsPerRow;
+        for (int i = 0; i < changedCount; i++) {
+            changedTiles[i] = i;
+            inChanged[i] = true;
+        }
+    }
+
+    /*
+     * Word whose bit b holds the cell to the left (column - 1) of bit b in word w
+     * of the row starting at rowStart, wrapping the first column onto the last.
+     */
+    private long west (long[] src, int rowStart, int w) {
+        long carry;
+        if (w > 0) {
+            carry = src[rowStart + w - 1] >>> 63;
+        }
+        else if (toroidal) {
+            carry = (src[rowStart + wordsPerRow - 1] >>> (tailBits - 1)) & 1L;
+        }
+        else {
+            carry = 0;
+        }
+        return (src[rowStart + w] << 1) | carry;
+    }
+
+    /*
+     * Word whose bit b holds the cell to the right (column + 1) of bit b in word w
+     * of the row starting at rowStart, wrapping the last column onto the first.
+     */
+    private long east (long[] src, int rowStart, int w) {
+        if (w < wordsPerRow - 1) {
+            return (src[rowStart + w] >>> 1) | (src[rowStart + w + 1] << 63);
+        }
+        if (!toroidal) {
+            return src[rowStart + w] >>> 1;
+        }
+        return (src[rowStart + w] >>> 1) | ((src[rowStart] & 1L) << (tailBits - 1));
+    }
+
+    /**
+     * Applies the rules to 64 cells at once. Each argument is a word of cells lined up
+     * so that bit b of every word is one of the nine cells around bit b of c.
+     * The eight neighbor words are summed with full adders into a bit-sliced count
+     * (ones, twos, fours, eights) and the rule is evaluated on that count.
+     * @return the next state of the 64 cells in c
+     */
+    static long evolve (LifeRule rule, long nw, long n, long ne, long w, long c, long e, long sw, long s, long se) {
+        long upSum = nw ^ n ^ ne;
+        long upCarry = (nw & n) | (ne & (nw ^ n));
+        long midSum = w ^ e;
+        long midCarry = w & e;
+        long downSum = sw ^ s ^ se;
+        long downCarry = (sw & s) | (se & (sw ^ s));
+
+        long ones = upSum ^ midSum ^ downSum;
+        long onesCarry = (upSum & midSum) | (downSum & (upSum ^ midSum));
+        long carrySum = upCarry ^ midCarry ^ downCarry;
+        long carryCarry = (upCarry & midCarry) | (downCarry & (upCarry ^ midCarry));
+        long twos = carrySum ^ onesCarry;
+        long fours = carryCarry ^ (carrySum & onesCarry);
+        long eights = carryCarry & carrySum & onesCarry;
+        return rule.next(ones, twos, fours, eights, c);
+    }
+
+    /*
+     * Computes a band of rows of the next generation, splitting it in half until
+     * it is no larger than bandRows. Returns the number of alive cells in the band.
+     */
+    private static class BandTask extends RecursiveTask<Long>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final BitBoard board;
+        private final long[] src;
+        private final long[] dst;
+        private final int from;
+        private final int to;
+        private final int bandRows;
+
+        BandTask (BitBoard board, long[] src, long[] dst, int from, int to, int bandRows) {
+            this.board = board;
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+            this.bandRows = bandRows;
+        }
+
+        @Override
+        protected Long compute () {
+            if (to - from <= bandRows) {
+                return board.stepRows(src, dst, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            BandTask top = new BandTask(board, src, dst, from, middle, bandRows);
+            top.fork();
+            long bottom = new BandTask(board, src, dst, middle, to, bandRows).compute();
+            return top.join() + bottom;
+        }
+    }
+
+    private void checkCell (int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("Cell (" + row + "," + col + ") is outside the board");
+        }
+    }
+
+}
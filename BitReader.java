@@ -0,0 +1,145 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads bits most significant bit first from an InputStream. Bytes are read in large
+ * blocks and shifted into a 64-bit window, so the next bits can be looked at and
+ * consumed without touching the stream for every bit. The stream is only read when
+ * the bits asked for are not buffered yet, so reading from a pipe or socket does not
+ * wait for data beyond them.
+ */
+public class BitReader {
+    /** The largest number of bits peekBits() can return at once */
+    public static final int MAX_PEEK = 57;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;       // next byte of buffer to shift into the window
+    private int limit;          // number of bytes read into buffer
+    private boolean eof;
+    private long window;        // buffered bits, left-aligned: the next bit is bit 63
+    private int count;          // number of valid bits in window
+
+    /**
+     * @param in The stream to read from, it does not need to be buffered
+     */
+    public BitReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns true if there is at least one more bit to read
+     */
+    public boolean hasBits() throws IOException {
+        if (count == 0) refill(1);
+        return count > 0;
+    }
+
+    /**
+     * Returns the number of bits that can be read without reaching the end of the
+     * stream, at least min(n, bits left in the stream) of them
+     *
+     * @param n The number of bits the caller needs (at most MAX_PEEK)
+     */
+    public int available(int n) throws IOException {
+        if (count < n) refill(n);
+        return count;
+    }
+
+    /**
+     * Returns the number of bits that can be read without reading the stream, which is
+     * at least n if the bytes already read hold n more bits
+     *
+     * @param n The number of bits the caller would like (at most MAX_PEEK)
+     */
+    public int buffered(int n) {
+        if (count < n) shiftBuffered();
+        return count;
+    }
+
+    /**
+     * Returns the next n bits without consuming them, the first of them as the highest
+     * bit. Bits past the end of the stream read as zeroes.
+     *
+     * @param n The number of bits to look at (1..MAX_PEEK)
+     */
+    public long peekBits(int n) throws IOException {
+        if (count < n) refill(n);
+        return window >>> (64 - n);
+    }
+
+    /**
+     * Consumes n bits that have already been looked at with peekBits() or available()
+     *
+     * @param n The number of bits to consume
+     * @throws IOException if fewer than n bits are left in the stream
+     */
+    public void skipBits(int n) throws IOException {
+        if (n > count) throw new IOException("Unexpected end of encoded data");
+        window <<= n;
+        count -= n;
+    }
+
+    /**
+     * Reads one bit
+     *
+     * @return 0 or 1
+     * @throws IOException if there are no bits left in the stream
+     */
+    public int readBit() throws IOException {
+        if (count == 0) refill(1);
+        if (count == 0) throw new IOException("Unexpected end of encoded data");
+        int bit = (int) (window >>> 63);
+        window <<= 1;
+        count--;
+        return bit;
+    }
+
+    /**
+     * Returns the number of bits left in the current byte, without reading the stream
+     */
+    public int bitsToByteBoundary() {
+        return count & 7;
+    }
+
+    /**
+     * Drops the bits left in the current byte, so the next read starts on a byte boundary
+     */
+    public void alignToByte() {
+        int drop = count & 7;
+        window <<= drop;
+        count -= drop;
+    }
+
+    /*
+     * Shifts buffered bytes into the window, reading the stream only while fewer than
+     * needed bits are available
+     */
+    private void refill(int needed) throws IOException {
+        shiftBuffered();
+        while (count < needed && !eof) {
+            limit = in.read(buffer);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                eof = true;
+                return;
+            }
+            shiftBuffered();
+        }
+    }
+
+    /*
+     * Shifts bytes already read from the stream into the window, as many as fit
+     */
+    private void shiftBuffered() {
+        while (count <= 56 && position < limit) {
+            window |= (buffer[position++] & 0xFFL) << (56 - count);
+            count += 8;
+        }
+    }
+}
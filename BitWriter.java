@@ -0,0 +1,78 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes bits most significant bit first to an OutputStream. Bits are packed into a
+ * 64-bit accumulator and whole words are copied into a byte buffer, so writing a code
+ * costs a few shifts and the stream only sees large writes.
+ */
+public class BitWriter {
+    private static final int BUFFER_SIZE = 1 << 16; // bytes, a multiple of 8
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;       // number of bytes used in buffer
+    private long accumulator;   // pending bits, right-aligned
+    private int pending;        // number of bits in accumulator (0..63)
+
+    /**
+     * @param out The stream to write to, it does not need to be buffered
+     */
+    public BitWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the lowest count bits of bits, the highest of them first
+     *
+     * @param bits The bits to write, right-aligned
+     * @param count The number of bits to write (0..64)
+     */
+    public void writeBits(long bits, int count) throws IOException {
+        if (count == 0) return;
+        if (count < 64) bits &= (1L << count) - 1;
+        int free = 64 - pending;
+        if (count < free) {
+            accumulator = (accumulator << count) | bits;
+            pending += count;
+            return;
+        }
+        // fill up the accumulator, emit it as a word and keep the leftover bits
+        int rest = count - free;
+        putLong((accumulator << free) | (bits >>> rest));
+        accumulator = rest == 0 ? 0 : bits & ((1L << rest) - 1);
+        pending = rest;
+    }
+
+    /**
+     * Writes the pending bits, padding the last byte with zeroes, and flushes the stream.
+     * Further bits start on a new byte.
+     */
+    public void finish() throws IOException {
+        if (pending > 0) {
+            long bits = accumulator << (64 - pending);
+            for (int i = 0; i < (pending + 7) / 8; i++) {
+                if (position == BUFFER_SIZE) drain();
+                buffer[position++] = (byte) (bits >>> (56 - 8 * i));
+            }
+            accumulator = 0;
+            pending = 0;
+        }
+        drain();
+        out.flush();
+    }
+
+    private void putLong(long word) throws IOException {
+        if (position == BUFFER_SIZE) drain();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (word >>> shift);
+        }
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
@@ -0,0 +1,248 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses independent blocks of bytes, each with its own frequency table and
+ * canonical code, so blocks can be encoded and decoded in any order and on any thread.
+ *
+ * An encoded block is a mode byte followed by the payload:
+ * - MODE_HUFFMAN: the CanonicalCode length table, then the codes zero-padded to a byte
+ * - MODE_STORED: the bytes as they are, used when Huffman coding would not save space
+ * - MODE_ORDER1: the block's order-0 length table, a 256-bit bitmap of the contexts
+ *   (previous bytes) that have their own code, the length table of each of those, then
+ *   the codes zero-padded to a byte. Each byte is coded with the code of the byte before
+ *   it, or with the order-0 code if that context has none; the first byte's context is 0.
+ * The original length of a block is not stored in it and must be passed to decodeBlock().
+ */
+public class BlockCodec {
+    public static final int MODE_HUFFMAN = 0;
+    public static final int MODE_STORED = 1;
+    public static final int MODE_ORDER1 = 2;
+
+    /** Maximum code length within blocks, so the decode tables stay small */
+    public static final int MAX_CODE_LENGTH = 15;
+
+    private static final int ALPHABET = CanonicalCode.ALPHABET;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /*
+     * Per-thread arrays reused from block to block
+     */
+    private static class Scratch {
+        final CodeLengths codeLengths = new CodeLengths(ALPHABET);
+        final long[] contextCounts = new long[ALPHABET * ALPHABET]; // [previous byte * 256 + byte]
+        final long[] counts = new long[ALPHABET];
+    }
+
+    /**
+     * Encodes data[offset..offset+length) with a single (order-0) code
+     *
+     * @return The encoded block, starting with its mode byte
+     */
+    public static byte[] encodeBlock(byte[] data, int offset, int length) {
+        return encodeBlock(data, offset, length, false);
+    }
+
+    /**
+     * Encodes data[offset..offset+length)
+     *
+     * @param order1 true to also try per-context codes, which are used if they make the
+     *               block smaller, for data where a byte depends on the byte before it
+     * @return The encoded block, starting with its mode byte
+     */
+    public static byte[] encodeBlock(byte[] data, int offset, int length, boolean order1) {
+        Scratch scratch = SCRATCH.get();
+        long[] counts = new long[ALPHABET];
+        for (int i = offset; i < offset + length; i++) counts[data[i] & 0xFF]++;
+        int[] lengths = new int[ALPHABET];
+        scratch.codeLengths.compute(counts, MAX_CODE_LENGTH, lengths);
+        long huffmanSize = 1 + tableBytes(lengths) + (bits(counts, 0, lengths) + 7) / 8;
+
+        int[][] contextLengths = null;
+        long order1Size = Long.MAX_VALUE;
+        if (order1 && length > 0) {
+            contextLengths = contextLengths(data, offset, length, lengths, scratch);
+            long tables = tableBytes(lengths) + ALPHABET / 8;
+            long bits = 0;
+            for (int context = 0; context < ALPHABET; context++) {
+                int[] code = contextLengths[context] != null ? contextLengths[context] : lengths;
+                if (contextLengths[context] != null) tables += tableBytes(code);
+                bits += bits(scratch.contextCounts, context * ALPHABET, code);
+            }
+            order1Size = 1 + tables + (bits + 7) / 8;
+        }
+
+        if (length == 0 || Math.min(huffmanSize, order1Size) >= 1 + length) return stored(data, offset, length);
+        try {
+            if (order1Size < huffmanSize) return order1(data, offset, length, lengths, contextLengths, (int) order1Size);
+            return huffman(data, offset, length, lengths, (int) huffmanSize);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // a ByteArrayOutputStream does not throw
+        }
+    }
+
+    /**
+     * Decodes a block written by encodeBlock()
+     *
+     * @param block Holds the encoded block at block[offset..offset+length)
+     * @param out Where the originalLength decoded bytes are written, from outOffset
+     * @throws IOException if the block is not valid
+     */
+    public static void decodeBlock(byte[] block, int offset, int length, byte[] out, int outOffset, int originalLength)
+            throws IOException {
+        if (length < 1) throw new IOException("Empty block");
+        int mode = block[offset];
+        if (mode == MODE_STORED) {
+            if (length - 1 != originalLength) throw new IOException("Stored block has the wrong length");
+            System.arraycopy(block, offset + 1, out, outOffset, originalLength);
+            return;
+        }
+        if (mode != MODE_HUFFMAN && mode != MODE_ORDER1) throw new IOException("Unknown block mode " + mode);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(block, offset + 1, length - 1);
+        DataInputStream header = new DataInputStream(in);
+        DecodeTable table = CanonicalCode.readFrom(header).newDecodeTable();
+        if (mode == MODE_HUFFMAN) {
+            BitReader reader = new BitReader(in);
+            for (int i = outOffset; i < outOffset + originalLength; i++) {
+                out[i] = (byte) table.read(reader);
+            }
+            return;
+        }
+
+        // A context's table is only built when the block uses it, since small blocks
+        // often carry codes for many contexts that occur once or twice
+        DecodeTable[] tables = new DecodeTable[ALPHABET];
+        CanonicalCode[] codes = new CanonicalCode[ALPHABET];
+        byte[] bitmap = new byte[ALPHABET / 8];
+        header.readFully(bitmap);
+        for (int context = 0; context < ALPHABET; context++) {
+            boolean own = (bitmap[context >>> 3] & (1 << (context & 7))) != 0;
+            if (own) codes[context] = CanonicalCode.readFrom(header);
+            else tables[context] = table;
+        }
+        BitReader reader = new BitReader(in);
+        int previous = 0;
+        for (int i = outOffset; i < outOffset + originalLength; i++) {
+            DecodeTable context = tables[previous];
+            if (context == null) context = tables[previous] = codes[previous].newDecodeTable();
+            previous = context.read(reader);
+            out[i] = (byte) previous;
+        }
+    }
+
+    private static byte[] huffman(byte[] data, int offset, int length, int[] lengths, int size) throws IOException {
+        CanonicalCode code = new CanonicalCode(lengths);
+        long[] codes = code.getCodes();
+        ByteArrayOutputStream block = new ByteArrayOutputStream(size);
+        block.write(MODE_HUFFMAN);
+        code.writeTo(new DataOutputStream(block));
+        BitWriter writer = new BitWriter(block);
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = data[i] & 0xFF;
+            writer.writeBits(codes[symbol], lengths[symbol]);
+        }
+        writer.finish();
+        return block.toByteArray();
+    }
+
+    private static byte[] order1(byte[] data, int offset, int length, int[] lengths, int[][] contextLengths, int size)
+            throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream(size);
+        DataOutputStream header = new DataOutputStream(block);
+        block.write(MODE_ORDER1);
+        CanonicalCode fallback = new CanonicalCode(lengths);
+        fallback.writeTo(header);
+
+        byte[] bitmap = new byte[ALPHABET / 8];
+        for (int context = 0; context < ALPHABET; context++) {
+            if (contextLengths[context] != null) bitmap[context >>> 3] |= 1 << (context & 7);
+        }
+        header.write(bitmap);
+        long[][] codes = new long[ALPHABET][];
+        int[][] codeLengths = new int[ALPHABET][];
+        long[] fallbackCodes = fallback.getCodes();
+        for (int context = 0; context < ALPHABET; context++) {
+            if (contextLengths[context] == null) {
+                codes[context] = fallbackCodes;
+                codeLengths[context] = lengths;
+            }
+            else {
+                CanonicalCode code = new CanonicalCode(contextLengths[context]);
+                code.writeTo(header);
+                codes[context] = code.getCodes();
+                codeLengths[context] = contextLengths[context];
+            }
+        }
+
+        BitWriter writer = new BitWriter(block);
+        int previous = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = data[i] & 0xFF;
+            writer.writeBits(codes[previous][symbol], codeLengths[previous][symbol]);
+            previous = symbol;
+        }
+        writer.finish();
+        return block.toByteArray();
+    }
+
+    /*
+     * Counts each byte by the byte before it into scratch.contextCounts, and gives a
+     * context its own code lengths only if its coded bits plus its length table are
+     * smaller than coding it with the order-0 lengths; sparse contexts stay null
+     */
+    private static int[][] contextLengths(byte[] data, int offset, int length, int[] lengths, Scratch scratch) {
+        long[] contextCounts = scratch.contextCounts;
+        Arrays.fill(contextCounts, 0);
+        int previous = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = data[i] & 0xFF;
+            contextCounts[previous * ALPHABET + symbol]++;
+            previous = symbol;
+        }
+
+        int[][] contextLengths = new int[ALPHABET][];
+        for (int context = 0; context < ALPHABET; context++) {
+            System.arraycopy(contextCounts, context * ALPHABET, scratch.counts, 0, ALPHABET);
+            long fallbackBits = bits(scratch.counts, 0, lengths);
+            if (fallbackBits == 0) continue;
+            int[] own = new int[ALPHABET];
+            scratch.codeLengths.compute(scratch.counts, MAX_CODE_LENGTH, own);
+            if (bits(scratch.counts, 0, own) + 8L * tableBytes(own) < fallbackBits) contextLengths[context] = own;
+        }
+        return contextLengths;
+    }
+
+    /*
+     * Number of bits to code counts[from..from+256) with the given code lengths
+     */
+    private static long bits(long[] counts, int from, int[] lengths) {
+        long bits = 0;
+        for (int symbol = 0; symbol < ALPHABET; symbol++) bits += counts[from + symbol] * lengths[symbol];
+        return bits;
+    }
+
+    /*
+     * Size of the CanonicalCode length table for these lengths
+     */
+    private static int tableBytes(int[] lengths) {
+        int present = 0;
+        for (int length : lengths) if (length > 0) present++;
+        return ALPHABET / 8 + present;
+    }
+
+    private static byte[] stored(byte[] data, int offset, int length) {
+        byte[] block = new byte[1 + length];
+        block[0] = MODE_STORED;
+        System.arraycopy(data, offset, block, 1, length);
+        return block;
+    }
+}
@@ -0,0 +1,317 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * Compresses files in independent blocks on a thread pool. Every block has its own
+ * frequency table and canonical code (see BlockCodec), so blocks are compressed and
+ * decompressed in parallel, and any single block can be decompressed on its own.
+ * Each block's CRC32C is kept in the index, so corrupt blocks are found without
+ * decoding them (see verify()).
+ *
+ * File format, all numbers big-endian:
+ * - magic "HUFI"
+ * - the encoded blocks, one after another
+ * - the block index: per block, its offset (long), encoded length (int), original length (int)
+ *   and the CRC32C of the encoded block (int)
+ * - footer: block count (int), block size (int), index offset (long), CRC32C (int) of the
+ *   index and the footer up to here, magic "HUFI"
+ */
+public class BlockHuffman {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private static final int MAGIC = 0x48554649; // "HUFI"
+    private static final int INDEX_ENTRY_BYTES = 20;
+    private static final int FOOTER_BYTES = 24;
+    private static final int MAX_BLOCKS = Integer.MAX_VALUE / INDEX_ENTRY_BYTES; // the index is read into one buffer
+
+    private final int blockSize;
+    private final ExecutorService pool;
+    private final int window; // blocks in flight, bounds memory use
+    private boolean order1;
+
+    /**
+     * Uses blocks of DEFAULT_BLOCK_SIZE bytes and the common ForkJoinPool
+     */
+    public BlockHuffman() {
+        this(DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param blockSize Number of bytes per block, 1-4 MB works well
+     * @param pool The threads blocks are compressed and decompressed on
+     */
+    public BlockHuffman(int blockSize, ExecutorService pool) {
+        if (blockSize <= 0) throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        this.blockSize = blockSize;
+        this.pool = pool;
+        window = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets whether blocks may use order-1 codes, one code per preceding byte, which
+     * compress structured text and logs better at some cost in compression speed.
+     * Decompression needs no setting. The default is false.
+     */
+    public void setOrder1(boolean order1) {
+        this.order1 = order1;
+    }
+
+    /**
+     * Compresses inputFile into outputFile
+     *
+     * @param inputFile The file to compress
+     * @param outputFile The block file to write (doesn't need to exist yet)
+     */
+    public void compress(String inputFile, String outputFile) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(outputFile), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long blocks = size / blockSize + (size % blockSize == 0 ? 0 : 1);
+            if (blocks > MAX_BLOCKS) throw new IOException("Too many blocks (" + blocks + "), use a larger block size");
+            ByteBuffer index = ByteBuffer.allocate((int) (blocks * INDEX_ENTRY_BYTES));
+
+            writeInt(out, MAGIC);
+            boolean order1 = this.order1;
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+            for (int block = 0; block < blocks; block++) {
+                long position = (long) block * blockSize;
+                int length = (int) Math.min(blockSize, size - position);
+                pending.add(pool.submit(() -> {
+                    byte[] data = new byte[length];
+                    readFully(in, ByteBuffer.wrap(data), position);
+                    return BlockCodec.encodeBlock(data, 0, length, order1);
+                }));
+                if (pending.size() >= window) writeBlock(out, index, await(pending.poll()), size);
+            }
+            while (!pending.isEmpty()) writeBlock(out, index, await(pending.poll()), size);
+
+            long indexOffset = out.position();
+            index.flip();
+            while (index.hasRemaining()) out.write(index);
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+            footer.putInt((int) blocks).putInt(blockSize).putLong(indexOffset);
+            footer.putInt(indexChecksum(index, footer)).putInt(MAGIC).flip();
+            while (footer.hasRemaining()) out.write(footer);
+        }
+    }
+
+    /**
+     * Decompresses a whole block file written by compress()
+     *
+     * @param compressedFile The block file
+     * @param outputFile The file to write the original bytes to (doesn't need to exist yet)
+     * @throws IOException if the file is not a valid block file
+     */
+    public void decompress(String compressedFile, String outputFile) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(compressedFile), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(outputFile), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Index index = readIndex(in);
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+            for (int block = 0; block < index.count; block++) {
+                int b = block;
+                pending.add(pool.submit(() -> readBlock(in, index, b)));
+                if (pending.size() >= window) writeFully(out, await(pending.poll()));
+            }
+            while (!pending.isEmpty()) writeFully(out, await(pending.poll()));
+        }
+    }
+
+    /**
+     * Decompresses one block of a block file without reading the other blocks.
+     * Block b holds the original bytes from b * getBlockSize(compressedFile).
+     *
+     * @param compressedFile The block file
+     * @param block The number of the block, from 0
+     * @return The original bytes of the block
+     */
+    public static byte[] decompressBlock(String compressedFile, int block) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(compressedFile), StandardOpenOption.READ)) {
+            Index index = readIndex(in);
+            if (block < 0 || block >= index.count) throw new IndexOutOfBoundsException("No block " + block);
+            return readBlock(in, index, block);
+        }
+    }
+
+    /**
+     * Checks the checksum of every block of a block file without decoding any of them
+     *
+     * @param compressedFile The block file
+     * @return The numbers of the corrupt blocks, in order, empty if there are none
+     * @throws IOException if the footer or the block index is corrupt
+     */
+    public static int[] verify(String compressedFile) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(compressedFile), StandardOpenOption.READ)) {
+            Index index = readIndex(in);
+            int[] corrupt = new int[index.count];
+            int count = 0;
+            byte[] encoded = new byte[0];
+            for (int block = 0; block < index.count; block++) {
+                int length = index.encodedLengths[block];
+                if (encoded.length < length) encoded = new byte[length];
+                readFully(in, ByteBuffer.wrap(encoded, 0, length), index.offsets[block]);
+                if (crc32c(encoded, length) != index.checksums[block]) corrupt[count++] = block;
+            }
+            return Arrays.copyOf(corrupt, count);
+        }
+    }
+
+    /**
+     * Returns the number of blocks in a block file
+     */
+    public static int getBlockCount(String compressedFile) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(compressedFile), StandardOpenOption.READ)) {
+            return readIndex(in).count;
+        }
+    }
+
+    /**
+     * Returns the number of original bytes per block (except the last) in a block file
+     */
+    public static int getBlockSize(String compressedFile) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(compressedFile), StandardOpenOption.READ)) {
+            return readIndex(in).blockSize;
+        }
+    }
+
+    /*
+     * Appends the next encoded block to the file and its entry to the index
+     */
+    private void writeBlock(FileChannel out, ByteBuffer index, byte[] encoded, long size) throws IOException {
+        long start = (long) (index.position() / INDEX_ENTRY_BYTES) * blockSize;
+        index.putLong(out.position()).putInt(encoded.length).putInt((int) Math.min(blockSize, size - start))
+             .putInt(crc32c(encoded, encoded.length));
+        writeFully(out, encoded);
+    }
+
+    private static byte[] readBlock(FileChannel in, Index index, int block) throws IOException {
+        byte[] encoded = new byte[index.encodedLengths[block]];
+        readFully(in, ByteBuffer.wrap(encoded), index.offsets[block]);
+        if (crc32c(encoded, encoded.length) != index.checksums[block]) {
+            throw new IOException("Checksum mismatch in block " + block);
+        }
+        byte[] data = new byte[index.originalLengths[block]];
+        BlockCodec.decodeBlock(encoded, 0, encoded.length, data, 0, data.length);
+        return data;
+    }
+
+    /*
+     * The block index of an open block file
+     */
+    private static class Index {
+        int count;
+        int blockSize;
+        long[] offsets;
+        int[] encodedLengths;
+        int[] originalLengths;
+        int[] checksums;
+    }
+
+    private static Index readIndex(FileChannel in) throws IOException {
+        long size = in.size();
+        if (size < 4 + FOOTER_BYTES) throw new IOException("Not a block Huffman file");
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        readFully(in, magic, 0);
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+        readFully(in, footer, size - FOOTER_BYTES);
+        footer.flip();
+        Index index = new Index();
+        index.count = footer.getInt();
+        index.blockSize = footer.getInt();
+        long indexOffset = footer.getLong();
+        int indexCrc = footer.getInt();
+        // the count is checked against the file size before the index is allocated
+        if (footer.getInt() != MAGIC || magic.getInt(0) != MAGIC || index.count < 0 || index.count > MAX_BLOCKS
+                || index.blockSize <= 0 || indexOffset < 4
+                || indexOffset != size - FOOTER_BYTES - (long) index.count * INDEX_ENTRY_BYTES) {
+            throw new IOException("Not a block Huffman file");
+        }
+
+        ByteBuffer entries = ByteBuffer.allocate((int) ((long) index.count * INDEX_ENTRY_BYTES));
+        readFully(in, entries, indexOffset);
+        entries.flip();
+        if (indexChecksum(entries, footer) != indexCrc) throw new IOException("Checksum mismatch in block index");
+        index.offsets = new long[index.count];
+        index.encodedLengths = new int[index.count];
+        index.originalLengths = new int[index.count];
+        index.checksums = new int[index.count];
+        for (int block = 0; block < index.count; block++) {
+            index.offsets[block] = entries.getLong();
+            index.encodedLengths[block] = entries.getInt();
+            index.originalLengths[block] = entries.getInt();
+            index.checksums[block] = entries.getInt();
+            if (index.offsets[block] < 4 || index.encodedLengths[block] < 1
+                    || index.offsets[block] + index.encodedLengths[block] > indexOffset
+                    || index.originalLengths[block] < 0 || index.originalLengths[block] > index.blockSize) {
+                throw new IOException("Invalid entry for block " + block);
+            }
+        }
+        return index;
+    }
+
+    private static byte[] await(Future<byte[]> block) throws IOException {
+        try {
+            return block.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        catch (ExecutionException e) {
+            // ForkJoinPool wraps the checked exceptions of a Callable in RuntimeExceptions
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) throw (IOException) cause;
+            }
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /*
+     * CRC32C of the index entries and the footer fields before the checksum
+     */
+    private static int indexChecksum(ByteBuffer entries, ByteBuffer footer) {
+        CRC32C crc = new CRC32C();
+        crc.update(entries.array(), 0, entries.limit());
+        crc.update(footer.array(), 0, FOOTER_BYTES - 8);
+        return (int) crc.getValue();
+    }
+
+    private static int crc32c(byte[] bytes, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = in.read(buffer, position);
+            if (n < 0) throw new IOException("Unexpected end of file");
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel out, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) out.write(buffer);
+    }
+
+    private static void writeInt(FileChannel out, int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).putInt(value);
+        buffer.flip();
+        while (buffer.hasRemaining()) out.write(buffer);
+    }
+}
@@ -0,0 +1,536 @@
+package conwaygame;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads and saves BitBoards without going through StdIn one token per cell.
+ *
+ * Three formats are understood:
+ * - the GameOfLife text format: rows, columns, then rows * columns true/false values
+ * - run length encoded (RLE) patterns: an "x = c, y = r" header followed by runs of
+ *   b (DEAD) and o (ALIVE) cells, $ between rows and ! at the end
+ * - binary snapshots written by saveSnapshot: a 16 byte header (magic, version, rows,
+ *   columns) followed by the board's words, so a checkpoint is a straight memory copy
+ *
+ * Snapshots of BitBoards and OffHeapBoards are the same format, so either can restore
+ * a checkpoint of the other. OffHeapBoard snapshots are copied one row of words at a
+ * time and never hold the whole board in the Java heap.
+ *
+ * Files are read through memory-mapped windows, so parsing is a single scan over the
+ * bytes of the file.
+ */
+public class BoardLoader
+{
+
+    private static final int SNAPSHOT_MAGIC = 0x474F4C42; // "GOLB"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_BYTES = 16;
+    private static final long WINDOW_BYTES = 1L << 30;    // largest mapped window
+    private static final int RLE_LINE_LENGTH = 70;
+
+    private BoardLoader () {
+    }
+
+    /**
+     * Loads a board, detecting whether the file is a snapshot, text or RLE file
+     * @param file the file to load
+     * @return BitBoard holding the pattern in the file
+     */
+    public static BitBoard load (String file) throws IOException {
+        try (MappedReader in = new MappedReader(file)) {
+            if (in.size() >= SNAPSHOT_HEADER_BYTES && in.peekInt() == SNAPSHOT_MAGIC) {
+                return loadSnapshot(file);
+            }
+            int c = in.skipWhitespace();
+            if (c >= '0' && c <= '9') {
+                return readText(in);
+            }
+            return readRle(in);
+        }
+    }
+
+    /**
+     * Loads a board in the GameOfLife text format (the same format as the GameOfLife(String) constructor)
+     * @param file the file to load
+     * @return BitBoard holding the pattern in the file
+     */
+    public static BitBoard loadText (String file) throws IOException {
+        try (MappedReader in = new MappedReader(file)) {
+            return readText(in);
+        }
+    }
+
+    /**
+     * Loads a run length encoded (RLE) pattern
+     * @param file the file to load
+     * @return BitBoard holding the pattern in the file
+     */
+    public static BitBoard loadRle (String file) throws IOException {
+        try (MappedReader in = new MappedReader(file)) {
+            return readRle(in);
+        }
+    }
+
+    /**
+     * Loads a binary snapshot written by saveSnapshot
+     * @param file the file to load
+     * @return BitBoard holding the pattern in the file
+     */
+    public static BitBoard loadSnapshot (String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            int[] size = readSnapshotHeader(channel, file);
+            BitBoard board = new BitBoard(size[0], size[1]);
+            long[] words = board.words();
+            checkSnapshotLength(channel, file, words.length);
+            int done = 0;
+            while (done < words.length) {
+                int count = (int) Math.min(words.length - done, WINDOW_BYTES / 8);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                      SNAPSHOT_HEADER_BYTES + 8L * done, 8L * count);
+                window.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words, done, count);
+                done += count;
+            }
+            board.wordsChanged();
+            return board;
+        }
+    }
+
+    /**
+     * Loads a binary snapshot into an OffHeapBoard in direct memory
+     * @param file the file to load
+     * @return OffHeapBoard holding the pattern in the file
+     */
+    public static OffHeapBoard loadOffHeapSnapshot (String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            int[] size = readSnapshotHeader(channel, file);
+            OffHeapBoard board = new OffHeapBoard(size[0], size[1]);
+            readSnapshotRows(channel, file, board);
+            return board;
+        }
+    }
+
+    /**
+     * Loads a binary snapshot into an OffHeapBoard whose generations are memory-mapped
+     * files in the given directory
+     * @param file the file to load
+     * @param directory where the generation files are created (existing files are overwritten)
+     * @return OffHeapBoard holding the pattern in the file
+     */
+    public static OffHeapBoard loadOffHeapSnapshot (String file, Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            int[] size = readSnapshotHeader(channel, file);
+            OffHeapBoard board = new OffHeapBoard(size[0], size[1], directory);
+            readSnapshotRows(channel, file, board);
+            return board;
+        }
+    }
+
+    /**
+     * Saves a board as a binary snapshot that loadSnapshot restores
+     * @param board the board to save
+     * @param file the file to write (doesn't need to exist yet)
+     */
+    public static void saveSnapshot (BitBoard board, String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(board.getRows()).putInt(board.getCols());
+            long[] words = board.words();
+            int done = 0;
+            while (done < words.length) {
+                LongBuffer longs = buffer.asLongBuffer();
+                int count = Math.min(words.length - done, longs.remaining());
+                longs.put(words, done, count);
+                buffer.position(buffer.position() + 8 * count);
+                done += count;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Saves an OffHeapBoard as a binary snapshot that loadSnapshot or loadOffHeapSnapshot restores
+     * @param board the board to save
+     * @param file the file to write (doesn't need to exist yet)
+     */
+    public static void saveSnapshot (OffHeapBoard board, String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(board.getRows()).putInt(board.getCols());
+            long[] row = new long[board.getWordsPerRow()];
+            for (int i = 0; i < board.getRows(); i++) {
+                board.readRow(i, row, 0);
+                int done = 0;
+                while (done < row.length) {
+                    LongBuffer longs = buffer.asLongBuffer();
+                    int count = Math.min(row.length - done, longs.remaining());
+                    longs.put(row, done, count);
+                    buffer.position(buffer.position() + 8 * count);
+                    done += count;
+                    if (buffer.remaining() < 8) {
+                        writeFully(channel, buffer);
+                    }
+                }
+            }
+            writeFully(channel, buffer);
+        }
+    }
+
+    /**
+     * Saves a board as a run length encoded (RLE) pattern
+     * @param board the board to save
+     * @param file the file to write (doesn't need to exist yet)
+     */
+    public static void saveRle (BitBoard board, String file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.US_ASCII)) {
+            out.write("x = " + board.getCols() + ", y = " + board.getRows() + ", rule = " + board.getRule());
+            out.newLine();
+            RleWriter rle = new RleWriter(out);
+            int pendingRows = 0;
+            for (int i = 0; i < board.getRows(); i++) {
+                int dead = 0;
+                int j = 0;
+                while (j < board.getCols()) {
+                    boolean alive = board.getCellState(i, j);
+                    int run = 1;
+                    while (j + run < board.getCols() && board.getCellState(i, j + run) == alive) {
+                        run++;
+                    }
+                    if (alive) {
+                        rle.run(pendingRows, '$');
+                        rle.run(dead, 'b');
+                        rle.run(run, 'o');
+                        pendingRows = 0;
+                        dead = 0;
+                    }
+                    else {
+                        dead += run;
+                    }
+                    j += run;
+                }
+                pendingRows++;
+            }
+            rle.run(1, '!');
+            out.newLine();
+        }
+    }
+
+    /*
+     * Reads and checks the snapshot header
+     * @return the number of rows and columns
+     */
+    private static int[] readSnapshotHeader (FileChannel channel, String file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // keep reading until the header is complete
+        }
+        header.flip();
+        if (header.remaining() < SNAPSHOT_HEADER_BYTES || header.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException(file + " is not a board snapshot");
+        }
+        if (header.getInt() != SNAPSHOT_VERSION) {
+            throw new IOException(file + " has an unsupported snapshot version");
+        }
+        int rows = header.getInt();
+        int cols = header.getInt();
+        if (rows <= 0 || cols <= 0) {
+            throw new IOException(file + " has an invalid board size");
+        }
+        return new int[] { rows, cols };
+    }
+
+    private static void checkSnapshotLength (FileChannel channel, String file, long words) throws IOException {
+        if (channel.size() != SNAPSHOT_HEADER_BYTES + 8L * words) {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    /*
+     * Copies the words of a snapshot into an OffHeapBoard one row at a time, through
+     * mapped windows of at most WINDOW_BYTES (a row may span two windows)
+     */
+    private static void readSnapshotRows (FileChannel channel, String file, OffHeapBoard board) throws IOException {
+        long[] row = new long[board.getWordsPerRow()];
+        long total = (long) board.getRows() * row.length;
+        checkSnapshotLength(channel, file, total);
+        int rowIndex = 0;
+        int filled = 0;
+        long done = 0;
+        while (done < total) {
+            long count = Math.min(total - done, WINDOW_BYTES / 8);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  SNAPSHOT_HEADER_BYTES + 8L * done, 8L * count);
+            LongBuffer longs = window.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            while (longs.hasRemaining()) {
+                int n = Math.min(row.length - filled, longs.remaining());
+                longs.get(row, filled, n);
+                filled += n;
+                if (filled == row.length) {
+                    board.writeRow(rowIndex++, row, 0);
+                    filled = 0;
+                }
+            }
+            done += count;
+        }
+        board.wordsChanged();
+    }
+
+    private static void writeFully (FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static BitBoard readText (MappedReader in) throws IOException {
+        int rows = in.readInt();
+        int cols = in.readInt();
+        BitBoard board = new BitBoard(rows, cols);
+        long[] words = board.words();
+        int wordsPerRow = board.getWordsPerRow();
+        for (int i = 0; i < rows; i++) {
+            long word = 0;
+            for (int j = 0; j < cols; j++) {
+                if (in.readBoolean()) {
+                    word |= 1L << j;
+                }
+                if ((j & 63) == 63 || j == cols - 1) {
+                    words[i * wordsPerRow + (j >>> 6)] = word;
+                    word = 0;
+                }
+            }
+        }
+        board.wordsChanged();
+        return board;
+    }
+
+    private static BitBoard readRle (MappedReader in) throws IOException {
+        int c = in.skipWhitespace();
+        while (c == '#') {
+            in.skipLine();
+            c = in.skipWhitespace();
+        }
+        int cols = -1;
+        int rows = -1;
+        LifeRule rule = LifeRule.CONWAY;
+        while (c != -1 && c != '\n') {
+            in.read();
+            if (c == 'x' || c == 'y') {
+                int value = in.readInt();
+                if (c == 'x') cols = value;
+                else rows = value;
+            }
+            else if (c == 'r') {
+                while (c != -1 && c != '=') {
+                    c = in.read();
+                }
+                StringBuilder notation = new StringBuilder();
+                while ((c = in.read()) != -1 && c != '\n' && c != '\r') {
+                    notation.append((char) c);
+                }
+                try {
+                    rule = LifeRule.parse(notation.toString());
+                }
+                catch (IllegalArgumentException e) {
+                    throw new IOException("Unsupported RLE rule: " + notation, e);
+                }
+                break;
+            }
+            c = in.peek();
+        }
+        if (rows <= 0 || cols <= 0) {
+            throw new IOException("RLE header must give positive x and y");
+        }
+
+        BitBoard board = new BitBoard(rows, cols);
+        board.setRule(rule);
+        long[] words = board.words();
+        int wordsPerRow = board.getWordsPerRow();
+        int row = 0;
+        int col = 0;
+        int count = 0;
+        while ((c = in.read()) != -1 && c != '!') {
+            if (c >= '0' && c <= '9') {
+                count = count * 10 + (c - '0');
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                continue;
+            }
+            int run = count == 0 ? 1 : count;
+            count = 0;
+            if (c == '$') {
+                row += run;
+                col = 0;
+            }
+            else if (c == 'b' || c == '.') {
+                col += run;
+            }
+            else {
+                if (row >= rows || col + run > cols) {
+                    throw new IOException("RLE pattern does not fit in " + cols + "x" + rows);
+                }
+                for (int k = 0; k < run; k++, col++) {
+                    words[row * wordsPerRow + (col >>> 6)] |= 1L << col;
+                }
+            }
+        }
+        board.wordsChanged();
+        return board;
+    }
+
+    /*
+     * Writes RLE runs, wrapping lines before they get longer than RLE_LINE_LENGTH
+     */
+    private static class RleWriter
+    {
+        private final BufferedWriter out;
+        private int lineLength;
+
+        RleWriter (BufferedWriter out) {
+            this.out = out;
+        }
+
+        void run (int count, char tag) throws IOException {
+            if (count <= 0) {
+                return;
+            }
+            String token = count == 1 ? String.valueOf(tag) : count + String.valueOf(tag);
+            if (lineLength + token.length() > RLE_LINE_LENGTH) {
+                out.newLine();
+                lineLength = 0;
+            }
+            out.write(token);
+            lineLength += token.length();
+        }
+    }
+
+    /*
+     * Reads a file byte by byte through memory-mapped windows of at most WINDOW_BYTES
+     */
+    private static class MappedReader implements AutoCloseable
+    {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedReader (String file) throws IOException {
+            channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+            size = channel.size();
+            map(0);
+        }
+
+        long size () {
+            return size;
+        }
+
+        int peekInt () {
+            return window.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+        }
+
+        int peek () throws IOException {
+            if (!window.hasRemaining()) {
+                if (windowStart + window.limit() >= size) {
+                    return -1;
+                }
+                map(windowStart + window.limit());
+            }
+            return window.get(window.position()) & 0xFF;
+        }
+
+        int read () throws IOException {
+            int c = peek();
+            if (c != -1) {
+                window.position(window.position() + 1);
+            }
+            return c;
+        }
+
+        /*
+         * Skips whitespace and returns the next byte without consuming it
+         */
+        int skipWhitespace () throws IOException {
+            int c = peek();
+            while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                read();
+                c = peek();
+            }
+            return c;
+        }
+
+        void skipLine () throws IOException {
+            int c;
+            while ((c = read()) != -1 && c != '\n') {
+                // skip to the end of the line
+            }
+        }
+
+        /*
+         * Reads the next integer, skipping anything before it that is not a digit
+         */
+        int readInt () throws IOException {
+            int c = peek();
+            while (c != -1 && (c < '0' || c > '9')) {
+                read();
+                c = peek();
+            }
+            if (c == -1) {
+                throw new IOException("Expected a number but reached the end of the file");
+            }
+            int value = 0;
+            while (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                read();
+                c = peek();
+            }
+            return value;
+        }
+
+        boolean readBoolean () throws IOException {
+            int c = skipWhitespace();
+            boolean value;
+            if (c == 't' || c == 'T') {
+                value = true;
+            }
+            else if (c == 'f' || c == 'F') {
+                value = false;
+            }
+            else {
+                throw new IOException("Expected true or false but found '" + (char) c + "'");
+            }
+            while ((c = peek()) != -1 && c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                read();
+            }
+            return value;
+        }
+
+        private void map (long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, size - start));
+        }
+
+        @Override
+        public void close () throws IOException {
+            channel.close();
+        }
+    }
+
+}
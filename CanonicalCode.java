@@ -0,0 +1,156 @@
+package huffman;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A canonical Huffman code: only the code length of each symbol is kept, and the codes
+ * are assigned from the lengths in a fixed order (shorter codes first, then by symbol),
+ * so the code can be stored as its lengths and rebuilt exactly by the decoder.
+ *
+ * Stored code length tables are a 256-bit bitmap of the symbols that have a code
+ * followed by one byte per such symbol holding its length, 32 + n bytes in total.
+ */
+public class CanonicalCode {
+    /** Number of symbols a stored code length table can describe */
+    public static final int ALPHABET = 256;
+
+    private final int[] lengths;
+    private final long[] codes;
+
+    /**
+     * Assigns canonical codes to the given code lengths
+     *
+     * @param lengths For each symbol, the length of its code, 0 if it has no code
+     * @throws IllegalArgumentException if the lengths cannot form a prefix code
+     */
+    public CanonicalCode(int[] lengths) {
+        this.lengths = lengths.clone();
+        codes = new long[lengths.length];
+
+        int maxLength = 0;
+        for (int length : lengths) {
+            if (length < 0 || length > 64) throw new IllegalArgumentException("Code length must be 0..64: " + length);
+            maxLength = Math.max(maxLength, length);
+        }
+        int[] lengthCount = new int[maxLength + 1];
+        for (int length : lengths) lengthCount[length]++;
+        lengthCount[0] = 0;
+
+        // Kraft inequality: count the codes of each length left free by the shorter ones.
+        // Capped at the alphabet size, which no later length can use up, so a 64-bit
+        // length cannot overflow the count.
+        long free = 1;
+        for (int length = 1; length <= maxLength; length++) {
+            free = Math.min(2 * free, lengths.length) - lengthCount[length];
+            if (free < 0) throw new IllegalArgumentException("Code lengths are oversubscribed");
+        }
+
+        // first code of each length, as in RFC 1951
+        long[] nextCode = new long[maxLength + 1];
+        long code = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            code = (code + lengthCount[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) continue;
+            codes[symbol] = nextCode[length]++;
+        }
+    }
+
+    /**
+     * Makes the canonical code with the same lengths as the given encodings, so it
+     * compresses exactly as well
+     *
+     * @param encodings For each symbol, its code as a string of 1's and 0's, or null
+     */
+    public static CanonicalCode fromEncodings(String[] encodings) {
+        int[] lengths = new int[encodings.length];
+        for (int symbol = 0; symbol < encodings.length; symbol++) {
+            if (encodings[symbol] != null) lengths[symbol] = encodings[symbol].length();
+        }
+        return new CanonicalCode(lengths);
+    }
+
+    public int[] getLengths() {
+        return lengths.clone();
+    }
+
+    public long[] getCodes() {
+        return codes.clone();
+    }
+
+    /**
+     * Returns the codes as strings of 1's and 0's, in the same form as
+     * HuffmanCoding.getEncodings(), null for symbols without a code
+     */
+    public String[] toEncodings() {
+        String[] encodings = new String[lengths.length];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] == 0) continue;
+            String bits = Long.toBinaryString(codes[symbol]);
+            StringBuilder code = new StringBuilder();
+            for (int i = bits.length(); i < lengths[symbol]; i++) code.append('0');
+            encodings[symbol] = code.append(bits).toString();
+        }
+        return encodings;
+    }
+
+    /**
+     * Builds a lookup table that decodes this code
+     */
+    public DecodeTable newDecodeTable() {
+        return new DecodeTable(codes, lengths);
+    }
+
+    /**
+     * Writes the code length table: the bitmap of symbols with a code, then their lengths
+     *
+     * @param out Where the table is written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        if (lengths.length > ALPHABET) throw new IllegalStateException("Alphabet larger than " + ALPHABET);
+        byte[] bitmap = new byte[ALPHABET / 8];
+        int present = 0;
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] == 0) continue;
+            bitmap[symbol >>> 3] |= 1 << (symbol & 7);
+            present++;
+        }
+        byte[] table = new byte[present];
+        int i = 0;
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] != 0) table[i++] = (byte) lengths[symbol];
+        }
+        out.write(bitmap);
+        out.write(table);
+    }
+
+    /**
+     * Reads a code length table written by writeTo()
+     *
+     * @param in Positioned at the start of the table
+     * @return The code, over an alphabet of ALPHABET symbols
+     * @throws IOException if the table is truncated or does not describe a prefix code
+     */
+    public static CanonicalCode readFrom(DataInput in) throws IOException {
+        byte[] bitmap = new byte[ALPHABET / 8];
+        in.readFully(bitmap);
+        int[] lengths = new int[ALPHABET];
+        for (int symbol = 0; symbol < ALPHABET; symbol++) {
+            if ((bitmap[symbol >>> 3] & (1 << (symbol & 7))) != 0) {
+                lengths[symbol] = in.readUnsignedByte();
+                if (lengths[symbol] == 0) throw new IOException("Invalid code length table");
+            }
+        }
+        try {
+            return new CanonicalCode(lengths);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Invalid code length table", e);
+        }
+    }
+}
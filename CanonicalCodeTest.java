@@ -0,0 +1,112 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that corrupt code length tables are rejected with IOException by every reader
+ * of them, rather than failing later with an unchecked exception.
+ *
+ * Requires junit-jupiter on the classpath.
+ */
+public class CanonicalCodeTest {
+    private static final int CANONICAL_MAGIC = 0x48554631; // "HUF1", as written by HuffmanCoding
+
+    @Test
+    public void rejectsOversubscribedLongCodes() {
+        int[] lengths = new int[CanonicalCode.ALPHABET];
+        lengths[0] = 1;
+        lengths[1] = 1;
+        lengths[2] = 64;
+        assertThrows(IOException.class, () -> CanonicalCode.readFrom(input(table(lengths))));
+    }
+
+    @Test
+    public void acceptsCompleteCodeWith64BitCodes() throws IOException {
+        // 1, 2, ..., 63, 64, 64 uses every code exactly once
+        int[] lengths = new int[CanonicalCode.ALPHABET];
+        for (int symbol = 0; symbol < 64; symbol++) lengths[symbol] = symbol + 1;
+        lengths[64] = 64;
+        CanonicalCode code = CanonicalCode.readFrom(input(table(lengths)));
+        assertArrayEquals(lengths, code.getLengths());
+        code.newDecodeTable();
+
+        lengths[65] = 64;
+        assertThrows(IOException.class, () -> CanonicalCode.readFrom(input(table(lengths))));
+    }
+
+    @Test
+    public void decodeCanonicalRejectsCorruptHeader() throws IOException {
+        int[] lengths = new int[CanonicalCode.ALPHABET];
+        lengths['a'] = 1;
+        lengths['b'] = 1;
+        lengths['c'] = 64;
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(file);
+        header.writeInt(CANONICAL_MAGIC);
+        header.writeLong(3);
+        header.write(table(lengths));
+        header.write(new byte[8]);
+        assertThrows(IOException.class, () ->
+            HuffmanCoding.decodeCanonical(new ByteArrayInputStream(file.toByteArray()), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void decodeBlockRejectsAddedLongCode() throws IOException {
+        Random random = new Random(3);
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) ("abcdefgh".charAt(random.nextInt(8)) + (i % 3));
+        byte[] block = BlockCodec.encodeBlock(data, 0, data.length);
+        assertEquals(BlockCodec.MODE_HUFFMAN, block[0]);
+        byte[] out = new byte[data.length];
+
+        // the code is complete, so a symbol added with a 64-bit code oversubscribes it
+        int bitmap = 1;
+        int present = 0;
+        for (int symbol = 0; symbol < CanonicalCode.ALPHABET; symbol++) {
+            int bit = 1 << (symbol & 7);
+            if ((block[bitmap + (symbol >>> 3)] & bit) != 0) {
+                present++;
+                continue;
+            }
+            int position = bitmap + CanonicalCode.ALPHABET / 8 + present;
+            byte[] damaged = new byte[block.length + 1];
+            System.arraycopy(block, 0, damaged, 0, position);
+            damaged[position] = 64;
+            System.arraycopy(block, position, damaged, position + 1, block.length - position);
+            damaged[bitmap + (symbol >>> 3)] |= bit;
+            assertThrows(IOException.class, () -> BlockCodec.decodeBlock(damaged, 0, damaged.length, out, 0, data.length));
+        }
+    }
+
+    /*
+     * A stored code length table, as CanonicalCode.writeTo() writes it, for lengths that
+     * need not form a prefix code
+     */
+    private static byte[] table(int[] lengths) {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        byte[] bitmap = new byte[CanonicalCode.ALPHABET / 8];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] != 0) bitmap[symbol >>> 3] |= 1 << (symbol & 7);
+        }
+        table.write(bitmap, 0, bitmap.length);
+        for (int length : lengths) {
+            if (length != 0) table.write(length);
+        }
+        return table.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
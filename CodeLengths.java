@@ -0,0 +1,174 @@
+package huffman;
+
+import java.util.Arrays;
+
+/**
+ * Computes Huffman code lengths from symbol weights without building a tree of objects.
+ *
+ * An instance keeps its scratch arrays, so computing the lengths for a block allocates
+ * nothing; an instance must not be shared between threads.
+ */
+public class CodeLengths {
+    private static final int SYMBOL_BITS = 16;  // low bits of a sort key hold the symbol
+    private static final long MAX_WEIGHT = (1L << (63 - SYMBOL_BITS)) - 1;
+
+    private final long[] keys;      // (weight << SYMBOL_BITS) | symbol, sorted
+    private final long[] weights;   // leaves 0..n-1 in sorted order, then merged nodes
+    private final int[] parents;    // parent of each node, then reused for node depths
+
+    /**
+     * @param alphabetSize Number of symbols, at most 2^16
+     */
+    public CodeLengths(int alphabetSize) {
+        if (alphabetSize < 1 || alphabetSize > 1 << SYMBOL_BITS) {
+            throw new IllegalArgumentException("Alphabet size must be 1.." + (1 << SYMBOL_BITS));
+        }
+        keys = new long[alphabetSize];
+        weights = new long[2 * alphabetSize];
+        parents = new int[2 * alphabetSize];
+    }
+
+    /**
+     * Computes Huffman code lengths for the symbols with a count above 0, with the
+     * two-queue method: leaves sorted by count form one queue, merged nodes are created
+     * in increasing weight and form the other. Ties go to the leaf and then to the
+     * smaller symbol, so the lengths only depend on the counts. If a code would be
+     * longer than maxLength, package-merge is used instead.
+     *
+     * @param counts Count of each symbol, indexed by symbol, each below 2^47
+     * @param maxLength Maximum code length
+     * @param lengths Receives the code length of each symbol, 0 for symbols with count 0
+     * @return The longest code length
+     */
+    public int compute(long[] counts, int maxLength, int[] lengths) {
+        int n = 0;
+        for (int symbol = 0; symbol < counts.length; symbol++) {
+            lengths[symbol] = 0;
+            if (counts[symbol] == 0) continue;
+            if (counts[symbol] < 0 || counts[symbol] > MAX_WEIGHT) {
+                throw new IllegalArgumentException("Count out of range: " + counts[symbol]);
+            }
+            keys[n++] = (counts[symbol] << SYMBOL_BITS) | symbol;
+        }
+        if (n == 0) return 0;
+        if (n == 1) {
+            lengths[(int) (keys[0] & ((1 << SYMBOL_BITS) - 1))] = 1;
+            return 1;
+        }
+        Arrays.sort(keys, 0, n);
+        for (int i = 0; i < n; i++) weights[i] = keys[i] >>> SYMBOL_BITS;
+
+        // node n + k is the k-th merged node, they are created in increasing weight
+        int leaf = 0, merged = n, root = 2 * n - 2;
+        for (int node = n; node <= root; node++) {
+            int first = leaf < n && (merged == node || weights[leaf] <= weights[merged]) ? leaf++ : merged++;
+            int second = leaf < n && (merged == node || weights[leaf] <= weights[merged]) ? leaf++ : merged++;
+            weights[node] = weights[first] + weights[second];
+            parents[first] = node;
+            parents[second] = node;
+        }
+
+        // parents point to higher nodes, so depths can replace them from the root down
+        parents[root] = 0;
+        for (int node = root - 1; node >= n; node--) parents[node] = parents[parents[node]] + 1;
+        int longest = 0;
+        for (int i = 0; i < n; i++) {
+            int length = parents[parents[i]] + 1;
+            lengths[(int) (keys[i] & ((1 << SYMBOL_BITS) - 1))] = length;
+            longest = Math.max(longest, length);
+        }
+        if (longest <= maxLength) return longest;
+
+        int[] symbols = new int[n];
+        for (int i = 0; i < n; i++) symbols[i] = (int) (keys[i] & ((1 << SYMBOL_BITS) - 1));
+        Arrays.sort(symbols);
+        int[] limited = packageMerge(counts, symbols, maxLength);
+        System.arraycopy(limited, 0, lengths, 0, counts.length);
+        return maxLength;
+    }
+
+    /**
+     * Computes optimal code lengths of at most maxLength bits with the package-merge
+     * algorithm. Each level merges the symbols, sorted by weight, with the pairs
+     * ("packages") formed from the level below; a symbol's code length is the number of
+     * times it is used by the cheapest 2n-2 items of the top level.
+     *
+     * @param weights Weight of each symbol, indexed by symbol
+     * @param symbols The symbols that need a code, weight 0 is allowed
+     * @param maxLength Maximum code length, 2^maxLength must be at least symbols.length
+     * @return Code length of each symbol, indexed like weights, 0 for symbols without a code
+     */
+    public static int[] packageMerge(long[] weights, int[] symbols, int maxLength) {
+        int n = symbols.length;
+        int[] lengths = new int[weights.length];
+        if (n == 0) return lengths;
+        if (n == 1) {
+            lengths[symbols[0]] = 1;
+            return lengths;
+        }
+        if (maxLength < 63 && n > 1L << maxLength) {
+            throw new IllegalArgumentException(n + " symbols do not fit in codes of " + maxLength + " bits");
+        }
+
+        // leaves sorted by weight, ties by symbol so the result is deterministic
+        int[] sorted = sortByWeight(weights, symbols);
+        long[] leafWeights = new long[n];
+        for (int i = 0; i < n; i++) leafWeights[i] = weights[sorted[i]];
+
+        // isPackage[level][i]: whether item i of that level is a package or a leaf
+        boolean[][] isPackage = new boolean[maxLength][];
+        long[] items = leafWeights.clone();
+        isPackage[0] = new boolean[n];
+        for (int level = 1; level < maxLength; level++) {
+            int packages = items.length / 2;
+            long[] merged = new long[n + packages];
+            boolean[] kind = new boolean[n + packages];
+            int leaf = 0, pack = 0;
+            for (int i = 0; i < merged.length; i++) {
+                long packageWeight = pack < packages ? items[2 * pack] + items[2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < n && leafWeights[leaf] <= packageWeight) {
+                    merged[i] = leafWeights[leaf++];
+                }
+                else {
+                    merged[i] = packageWeight;
+                    kind[i] = true;
+                    pack++;
+                }
+            }
+            items = merged;
+            isPackage[level] = kind;
+        }
+
+        // the first k items of a level use a prefix of the leaves and a prefix of the
+        // packages, and those packages are the first 2 * packages items of the level below
+        int k = 2 * n - 2;
+        for (int level = maxLength - 1; level >= 0 && k > 0; level--) {
+            int leaves = 0, packages = 0;
+            for (int i = 0; i < k; i++) {
+                if (isPackage[level][i]) packages++;
+                else leaves++;
+            }
+            for (int i = 0; i < leaves; i++) lengths[sorted[i]]++;
+            k = 2 * packages;
+        }
+        return lengths;
+    }
+
+    /*
+     * Returns symbols ordered by increasing weight, equal weights by increasing symbol
+     */
+    private static int[] sortByWeight(long[] weights, int[] symbols) {
+        int[] sorted = symbols.clone();
+        for (int i = 1; i < sorted.length; i++) {
+            int symbol = sorted[i];
+            int j = i - 1;
+            while (j >= 0 && (weights[sorted[j]] > weights[symbol]
+                              || (weights[sorted[j]] == weights[symbol] && sorted[j] > symbol))) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = symbol;
+        }
+        return sorted;
+    }
+}
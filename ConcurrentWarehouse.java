@@ -0,0 +1,236 @@
+package warehouse;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A warehouse that can be used from many threads at once. Every sector has its own
+ * lock, so operations on products in different sectors run in parallel, and each
+ * operation holds the lock of the sector it changes for its whole duration, so the
+ * heap is only ever seen in a valid state and an eviction happens together with the
+ * add that caused it. Operations that read several sectors take their locks in index
+ * order. getSectors() returns a copy of the sectors taken the same way, since the
+ * sectors themselves keep changing under other threads.
+ *
+ * The product id -> sector index is split into stripes by id, each guarded by its own
+ * monitor. The stripe is taken from the top bits of the id's hash, since the stripe's
+ * own map probes from the low bits. A stripe is only locked for a single lookup or
+ * update, never while waiting for another lock, so it cannot take part in a deadlock.
+ * An add claims its id in the stripe before it places the product, so of two threads
+ * adding the same id to different sectors exactly one succeeds.
+ */
+public class ConcurrentWarehouse extends Warehouse {
+    private final ReentrantLock[] locks;
+    private final IntIntMap[] stripes;
+    private final int stripeShift; // 32 - log2(stripe count)
+
+    /**
+     * Initializes 10 empty sectors of 5 products, like Warehouse()
+     */
+    public ConcurrentWarehouse() {
+        super();
+        locks = newLocks(getSectorCount());
+        stripes = newStripes();
+        stripeShift = Integer.numberOfLeadingZeros(stripes.length) + 1;
+    }
+
+    /**
+     * @see Warehouse#Warehouse(int, int)
+     */
+    public ConcurrentWarehouse(int sectorCount, int capacity) {
+        super(sectorCount, capacity);
+        locks = newLocks(sectorCount);
+        stripes = newStripes();
+        stripeShift = Integer.numberOfLeadingZeros(stripes.length) + 1;
+    }
+
+    @Override
+    public void addProduct(int id, String name, int stock, int day, int demand) {
+        ReentrantLock lock = locks[sectorIndex(id)];
+        lock.lock();
+        try {
+            super.addProduct(id, name, stock, day, demand);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void restockProduct(int id, int amount) {
+        ReentrantLock lock = lockProduct(id);
+        if (lock == null) return;
+        try {
+            super.restockProduct(id, amount);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteProduct(int id) {
+        ReentrantLock lock = lockProduct(id);
+        if (lock == null) return;
+        try {
+            super.deleteProduct(id);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void purchaseProduct(int id, int day, int amount) {
+        ReentrantLock lock = lockProduct(id);
+        if (lock == null) return;
+        try {
+            super.purchaseProduct(id, day, amount);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * purchaseProducts() applies the orders of a sector with only that sector locked
+     */
+    @Override
+    protected void withSector(int sector, Runnable action) {
+        locks[sector].lock();
+        try {
+            action.run();
+        }
+        finally {
+            locks[sector].unlock();
+        }
+    }
+
+    /*
+     * betterAddProduct() tries the sectors one at a time through this, so it never holds
+     * two sector locks; if every sector is full it falls back to addProduct()
+     */
+    @Override
+    protected boolean addIfRoom(int sector, int id, String name, int stock, int day, int demand) {
+        // skip full sectors without locking them, the size is checked again under the lock
+        Sector peek = getSector(sector);
+        if (peek.getSize() == peek.getCapacity()) return false;
+        locks[sector].lock();
+        try {
+            return super.addIfRoom(sector, id, name, stock, day, demand);
+        }
+        finally {
+            locks[sector].unlock();
+        }
+    }
+
+    @Override
+    protected int sectorOf(int id) {
+        IntIntMap stripe = stripeOf(id);
+        synchronized (stripe) {
+            return stripe.getOrDefault(id, -1);
+        }
+    }
+
+    @Override
+    protected boolean indexProduct(int id, int sector) {
+        IntIntMap stripe = stripeOf(id);
+        synchronized (stripe) {
+            return stripe.putIfAbsent(id, sector);
+        }
+    }
+
+    @Override
+    protected void unindexProduct(int id) {
+        IntIntMap stripe = stripeOf(id);
+        synchronized (stripe) {
+            stripe.remove(id);
+        }
+    }
+
+    /**
+     * Returns a consistent snapshot of all sectors, taken with every sector locked
+     */
+    @Override
+    public String toString() {
+        lockAll();
+        try {
+            return super.toString();
+        }
+        finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Returns a copy of all sectors and their products, taken with every sector locked,
+     * so it is consistent and later changes to the warehouse do not show in it
+     */
+    @Override
+    public Sector[] getSectors() {
+        lockAll();
+        try {
+            Sector[] copies = new Sector[getSectorCount()];
+            for (int i = 0; i < copies.length; i++) copies[i] = copyOf(getSector(i));
+            return copies;
+        }
+        finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Locks the sector holding the product with this id and returns its lock, or returns
+     * null if there is no such product. A product only enters or leaves a sector while
+     * that sector is locked, so it stays there until the lock is released.
+     */
+    private ReentrantLock lockProduct(int id) {
+        while (true) {
+            int sector = sectorOf(id);
+            if (sector < 0) return null;
+            ReentrantLock lock = locks[sector];
+            lock.lock();
+            if (sectorOf(id) == sector) return lock;
+            lock.unlock(); // the product moved or was removed before we got the lock
+        }
+    }
+
+    private IntIntMap stripeOf(int id) {
+        return stripes[IntIntMap.mix(id) >>> stripeShift];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : locks) lock.lock();
+    }
+
+    private void unlockAll() {
+        for (int i = locks.length - 1; i >= 0; i--) locks[i].unlock();
+    }
+
+    /*
+     * Copies a sector product by product, keeping each product at its index in the heap
+     */
+    private static Sector copyOf(Sector sector) {
+        Sector copy = new Sector(sector.getCapacity());
+        for (int i = 1; i <= sector.getSize(); i++) {
+            Product p = sector.get(i);
+            copy.add(new Product(p.getId(), p.getName(), p.getStock(), p.getLastPurchaseDay(), p.getDemand()));
+        }
+        return copy;
+    }
+
+    private static ReentrantLock[] newLocks(int count) {
+        ReentrantLock[] locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) locks[i] = new ReentrantLock();
+        return locks;
+    }
+
+    /*
+     * Enough stripes that threads rarely meet on one: the next power of two of 8 per core
+     */
+    private static IntIntMap[] newStripes() {
+        int count = Integer.highestOneBit(8 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+        IntIntMap[] stripes = new IntIntMap[count];
+        for (int i = 0; i < count; i++) stripes[i] = new IntIntMap();
+        return stripes;
+    }
+}
@@ -0,0 +1,149 @@
+package warehouse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress tests for ConcurrentWarehouse: several threads add, delete, restock and
+ * purchase products over a small range of ids at once, so they meet on the same
+ * sectors and ids all the time. Snapshots taken while they run, and the warehouse
+ * afterwards, must have every sector in heap order and the id -> sector index
+ * matching what the sectors hold.
+ *
+ * Requires junit-jupiter on the classpath.
+ */
+public class ConcurrentWarehouseTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 50000;
+    private static final int IDS = 500;
+
+    @Test
+    public void keepsHeapsAndIndexConsistent() throws Exception {
+        stress(new ConcurrentWarehouse(16, 20));
+    }
+
+    @Test
+    public void keepsDefaultWarehouseConsistent() throws Exception {
+        stress(new ConcurrentWarehouse());
+    }
+
+    @Test
+    public void getSectorsReturnsSnapshot() {
+        ConcurrentWarehouse warehouse = new ConcurrentWarehouse(4, 8);
+        for (int id = 0; id < 20; id++) warehouse.addProduct(id, "p" + id, 10, id, 1);
+        Sector[] snapshot = warehouse.getSectors();
+        String before = toString(snapshot);
+        for (int id = 0; id < 20; id += 2) warehouse.purchaseProduct(id, 100, 5);
+        for (int id = 1; id < 20; id += 4) warehouse.deleteProduct(id);
+        assertEquals(before, toString(snapshot));
+        checkConsistent(warehouse);
+    }
+
+    private static void stress(ConcurrentWarehouse warehouse) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            workers.add(pool.submit(() -> {
+                start.await();
+                work(warehouse, new Random(seed));
+                return null;
+            }));
+        }
+        Future<Integer> snapshots = pool.submit(() -> {
+            start.await();
+            int taken = 0;
+            while (!workers.stream().allMatch(Future::isDone)) {
+                checkHeaps(warehouse.getSectors());
+                taken++;
+            }
+            return taken;
+        });
+        start.countDown();
+        for (Future<?> worker : workers) worker.get(5, TimeUnit.MINUTES);
+        assertTrue(snapshots.get(1, TimeUnit.MINUTES) > 0);
+        pool.shutdown();
+        checkConsistent(warehouse);
+    }
+
+    private static void work(ConcurrentWarehouse warehouse, Random random) {
+        int[] ids = new int[16];
+        int[] days = new int[16];
+        int[] amounts = new int[16];
+        for (int i = 0; i < OPERATIONS; i++) {
+            int id = random.nextInt(IDS);
+            int day = random.nextInt(1000);
+            try {
+                switch (random.nextInt(6)) {
+                    case 0: warehouse.addProduct(id, "p" + id, random.nextInt(50), day, random.nextInt(10)); break;
+                    case 1: warehouse.betterAddProduct(id, "p" + id, random.nextInt(50), day, random.nextInt(10)); break;
+                    case 2: warehouse.deleteProduct(id); break;
+                    case 3: warehouse.restockProduct(id, random.nextInt(10)); break;
+                    case 4: warehouse.purchaseProduct(id, day, random.nextInt(5)); break;
+                    default:
+                        for (int k = 0; k < ids.length; k++) {
+                            ids[k] = random.nextInt(IDS);
+                            days[k] = random.nextInt(1000);
+                            amounts[k] = random.nextInt(5);
+                        }
+                        warehouse.purchaseProducts(ids, days, amounts);
+                }
+            }
+            catch (IllegalArgumentException e) {
+                // the id was already in the warehouse
+            }
+        }
+    }
+
+    /*
+     * Checks the heaps, and that every id is indexed to the one sector holding it or to
+     * none if no sector holds it
+     */
+    private static void checkConsistent(ConcurrentWarehouse warehouse) {
+        Sector[] sectors = warehouse.getSectors();
+        checkHeaps(sectors);
+        int[] holders = new int[IDS];
+        Arrays.fill(holders, -1);
+        for (int s = 0; s < sectors.length; s++) {
+            for (int i = 1; i <= sectors[s].getSize(); i++) {
+                int id = sectors[s].get(i).getId();
+                assertEquals(-1, holders[id], "id " + id + " in two sectors");
+                holders[id] = s;
+            }
+        }
+        for (int id = 0; id < IDS; id++) assertEquals(holders[id], warehouse.sectorOf(id), "sector of id " + id);
+    }
+
+    private static void checkHeaps(Sector[] sectors) {
+        for (int s = 0; s < sectors.length; s++) {
+            Sector sector = sectors[s];
+            assertTrue(sector.getSize() <= sector.getCapacity(), "sector " + s + " over capacity");
+            for (int i = 1; i <= sector.getSize(); i++) {
+                assertEquals(i, sector.indexOf(sector.get(i).getId()), "position in sector " + s);
+                if (i > 1) {
+                    assertTrue(sector.get(i / 2).getPopularity() <= sector.get(i).getPopularity(),
+                               "heap order in sector " + s + " at " + i);
+                }
+            }
+        }
+    }
+
+    private static String toString(Sector[] sectors) {
+        StringBuilder sb = new StringBuilder();
+        for (Sector sector : sectors) sb.append(sector).append('\n');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package huffman;
+
+import java.io.IOException;
+
+/**
+ * Decodes Huffman codes several bits at a time. The next TABLE_BITS bits index a table
+ * that gives the symbol and code length directly for every code of up to TABLE_BITS
+ * bits. Longer codes are rare, and for them the table gives the node of the code tree
+ * reached after TABLE_BITS bits, from which the rest of the code is walked one bit at a
+ * time in a tree kept in a flat int array. When fewer than TABLE_BITS bits have arrived,
+ * codes are walked in the tree from the root, so the decoder never waits for bits past
+ * the end of the code it is reading.
+ */
+public class DecodeTable {
+    private static final int TABLE_BITS = 10;
+
+    // entry > 0: (symbol << 8) | code length, entry < 0: ~(tree node), 0: no such code
+    private final int[] primary = new int[1 << TABLE_BITS];
+    // children of node k at tree[2k] (bit 0) and tree[2k+1] (bit 1):
+    // > 0 another node, < 0 ~(symbol), 0 no such code. Node 0 is the root.
+    private int[] tree;
+    private int nodes = 1;
+
+    /**
+     * Builds the table for the encodings made by HuffmanCoding.makeEncodings()
+     *
+     * @param encodings For each symbol, its code as a string of 1's and 0's, or null
+     */
+    public DecodeTable(String[] encodings) {
+        int[] lengths = new int[encodings.length];
+        long[] codes = new long[encodings.length];
+        for (int symbol = 0; symbol < encodings.length; symbol++) {
+            if (encodings[symbol] == null) continue;
+            if (encodings[symbol].length() > 64) throw new IllegalArgumentException("Encoding longer than 64 bits");
+            lengths[symbol] = encodings[symbol].length();
+            codes[symbol] = Long.parseUnsignedLong(encodings[symbol], 2);
+        }
+        build(codes, lengths);
+    }
+
+    /**
+     * Builds the table for the given codes
+     *
+     * @param codes For each symbol, its code right-aligned
+     * @param lengths For each symbol, the length of its code, 0 if the symbol has no code
+     */
+    public DecodeTable(long[] codes, int[] lengths) {
+        build(codes, lengths);
+    }
+
+    private void build(long[] codes, int[] lengths) {
+        int totalLength = 0;
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] == 0) continue;
+            if (lengths[symbol] > 64) throw new IllegalArgumentException("Code longer than 64 bits");
+            totalLength += lengths[symbol];
+        }
+        tree = new int[2 * (totalLength + 1)];
+
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) continue;
+            long code = codes[symbol];
+            if (length <= TABLE_BITS) {
+                int first = (int) (code << (TABLE_BITS - length));
+                int last = (int) ((code + 1) << (TABLE_BITS - length));
+                for (int i = first; i < last; i++) primary[i] = (symbol << 8) | length;
+            }
+            // walk the tree, adding nodes as needed, and hang the symbol off the last one
+            int node = 0;
+            for (int depth = 1; depth < length; depth++) {
+                int slot = 2 * node + (int) ((code >>> (length - depth)) & 1);
+                if (tree[slot] == 0) tree[slot] = nodes++;
+                else if (tree[slot] < 0) throw new IllegalArgumentException("Codes are not prefix-free");
+                node = tree[slot];
+                if (depth == TABLE_BITS) primary[(int) (code >>> (length - TABLE_BITS))] = ~node;
+            }
+            int slot = 2 * node + (int) (code & 1);
+            if (tree[slot] != 0) throw new IllegalArgumentException("Codes are not prefix-free");
+            tree[slot] = ~symbol;
+        }
+    }
+
+    /**
+     * Reads one code and returns its symbol
+     *
+     * @param reader Positioned at the start of a code
+     * @return The decoded symbol
+     * @throws IOException if the bits are not a code or the data ends inside a code
+     */
+    public int read(BitReader reader) throws IOException {
+        if (reader.buffered(TABLE_BITS) < TABLE_BITS) return readBitByBit(reader);
+        int entry = primary[(int) reader.peekBits(TABLE_BITS)];
+        if (entry > 0) {
+            reader.skipBits(entry & 0xFF);
+            return entry >>> 8;
+        }
+        if (entry == 0) throw new IOException("Invalid code in encoded data");
+        reader.skipBits(TABLE_BITS);
+        int child = ~entry;
+        while (child > 0) {
+            child = tree[2 * child + reader.readBit()];
+        }
+        if (child == 0) throw new IOException("Invalid code in encoded data");
+        return ~child;
+    }
+
+    /*
+     * Reads one code a bit at a time, reading the stream only for bits of the code
+     */
+    private int readBitByBit(BitReader reader) throws IOException {
+        int child = 0;
+        do {
+            child = tree[2 * child + reader.readBit()];
+        } while (child > 0);
+        if (child == 0) throw new IOException("Invalid code in encoded data");
+        return ~child;
+    }
+}
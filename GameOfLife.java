@@ -1,5 +1,4 @@
 package conwaygame;
-import java.util.ArrayList;
 /**
  * Conway's Game of Life Class holds various methods that will
  * progress the state of the game's board through it's many iterations/generations.
@@ -9,6 +8,9 @@ import java.util.ArrayList;
  * Alive cells with >=4 neighbors die of overpopulation.
  * Alive cells with 2-3 neighbors survive.
  * Dead cells with exactly 3 neighbors become alive by reproduction.
+ *
+ * Other Life-like rules (HighLife, Day & Night, Seeds, ...) can be set with setRule,
+ * and the wraparound edges can be replaced by DEAD cells with setToroidal(false).
 
  * completed by Noor Mashal (@author Seth Kelley & @author Maxwell Goldberg)
  */
@@ -22,6 +24,13 @@ public class GameOfLife
     private boolean[][] grid;    // The board has the current generation of cells
     private int totalAliveCells; // Total number of alive cells in the grid (board)
 
+    private LifeRule rule = LifeRule.CONWAY; // birth/survival rule applied by computeNewGrid()
+    private boolean toroidal = true;         // edges wrap around, otherwise cells past them are DEAD
+
+    private int[] parent;               // union-find parents of the cells, reused between labelings
+    private boolean communityTracking;  // keep communities up to date in nextGeneration()
+    private int communities = -1;       // number of communities, -1 when not yet labeled
+
     /**
     * Default Constructor which creates a small 5x5 grid with five alive cells.
     * This variation does not exceed bounds and dies off after four iterations.
@@ -52,12 +61,27 @@ public class GameOfLife
         for (int i=0;i<row;i++){
             for (int j=0; j<column;j++){
                 grid[i][j]=StdIn.readBoolean();
+                if (grid[i][j])
+                totalAliveCells++;
             }
         }
 
         // WRITE YOUR CODE HERE
     }
 
+    /**
+    * Constructor used to continue a game from an existing grid, for example one
+    * exported by BitBoard or HashLife
+    * @param grid boolean grid where true denotes an ALIVE cell (it is copied, not kept)
+    */
+    public GameOfLife (boolean[][] grid) {
+        this.grid = new boolean[grid.length][];
+        for (int i = 0; i < grid.length; i++) {
+            this.grid[i] = grid[i].clone();
+        }
+        totalAliveCells = countAliveCells();
+    }
+
     /**
      * Returns grid
      * @return boolean[][] for current grid
@@ -88,21 +112,46 @@ public class GameOfLife
          // update this line, provided so that code compiles
     }
 
+    /**
+     * Sets the birth/survival rule used to compute new generations
+     * @param rule the rule, for example LifeRule.parse("B36/S23")
+     */
+    public void setRule (LifeRule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Returns the birth/survival rule used to compute new generations
+     * @return LifeRule for the current rule
+     */
+    public LifeRule getRule () {
+        return rule;
+    }
+
+    /**
+     * Sets whether the edges of the grid wrap around. If they don't, every cell past
+     * an edge counts as DEAD and communities don't connect across edges.
+     * @param toroidal true for wraparound edges, false for DEAD edges
+     */
+    public void setToroidal (boolean toroidal) {
+        this.toroidal = toroidal;
+        communities = -1;
+    }
+
+    /**
+     * Returns whether the edges of the grid wrap around
+     * @return true for wraparound edges, false for DEAD edges
+     */
+    public boolean isToroidal () {
+        return toroidal;
+    }
+
     /**
      * Returns true if there are any alive cells in the grid
      * @return true if there is at least one cell alive, otherwise returns false
      */
     public boolean isAlive () {
-        
-        for (int i=0;i<grid.length;i++){
-            for (int j=0; j<grid[0].length;j++){
-                if (grid[i][j])
-                return true;
-            }
-        }
-
-        // WRITE YOUR CODE HERE
-        return false; // update this line, provided so that code compiles
+        return totalAliveCells > 0; // kept exact from the births and deaths of every step
     }
 
     /**
@@ -120,6 +169,9 @@ public class GameOfLife
         for (int i = 0; i < dirs.length; i++) {
             int currRow = row + dirs[i][0];
             int currCol = col + dirs[i][1];
+            if (!toroidal && (currRow < 0 || currRow >= grid.length || currCol < 0 || currCol >= grid[0].length)) {
+                continue;
+            }
             if (currRow < 0) {
                 currRow = grid.length - 1;
             }
@@ -145,33 +197,117 @@ public class GameOfLife
 
     /**
      * Creates a new grid with the next generation of the current grid using 
-     * the rules for Conway's Game of Life.
+     * the rules for Conway's Game of Life (or the rule set with setRule).
+     * 
+     * The 3x3 neighborhood of each cell is kept as a 9-bit index that slides one
+     * column to the right per cell, and the next state is looked up in the rule's table.
      * 
      * @return boolean[][] of new grid (this is a new 2D array)
      */
     public boolean[][] computeNewGrid () {
 
         boolean[][] newGrid = new boolean[grid.length][grid[0].length];
-        for (int i=0;i < grid.length; i++){
-            for (int j = 0; j<grid[0].length; j++){
-                if (grid[i][j])
-                {
-                    if (numOfAliveNeighbors(i, j) <= 1 || numOfAliveNeighbors(i, j) >= 4)
-                        newGrid[i][j] = false;
-                    else
-                        newGrid[i][j] = true;
+        step(newGrid, false);
+
+        // WRITE YOUR CODE HERE
+        return newGrid;// update this line, provided so that code compiles
+    }
+
+    /**
+     * Writes the next generation into newGrid in one pass over the grid
+     * @param label true to also label the communities of newGrid in the same pass,
+     *              setting communities: every new alive cell is unioned with its W, NW, N
+     *              and NE neighbors, which are final by then, and the wraparound pairs
+     *              that are not yet written are joined at the end of the row and grid
+     * @return int for the number of births minus the number of deaths
+     */
+    private int step (boolean[][] newGrid, boolean label) {
+        int rows = grid.length;
+        int cols = grid[0].length;
+        if (label && (parent == null || parent.length != rows * cols)) {
+            parent = new int[rows * cols];
+        }
+        int delta = 0;
+        int alive = 0;
+        int unions = 0;
+        for (int i=0;i < rows; i++){
+            boolean[] up = i > 0 ? grid[i - 1] : (toroidal ? grid[rows - 1] : null);
+            boolean[] down = i < rows - 1 ? grid[i + 1] : (toroidal ? grid[0] : null);
+            int neighborhood = (column(up, grid[i], down, -1) << 3) | (column(up, grid[i], down, 0) << 6);
+            for (int j = 0; j < cols; j++){
+                neighborhood = (neighborhood >>> 3) | (column(up, grid[i], down, j + 1) << 6);
+                boolean cell = rule.next(neighborhood);
+                newGrid[i][j] = cell;
+                if (cell != grid[i][j])
+                delta += cell ? 1 : -1;
+                if (label && cell) {
+                    alive++;
+                    unions += unionWritten(newGrid, i, j);
                 }
-                else
-                {
-                    if (numOfAliveNeighbors(i, j) == 3)
-                        newGrid[i][j] = true;
+            }
+        }
+        if (label) {
+            if (toroidal) {
+                // row 0's neighbors above it are in the last row, written after it
+                for (int j = 0; j < cols; j++) {
+                    if (newGrid[0][j])
+                    unions += unionBelow(newGrid, rows - 1, j, 0);
                 }
-
             }
+            communities = alive - unions;
         }
+        return delta;
+    }
 
-        // WRITE YOUR CODE HERE
-        return newGrid;// update this line, provided so that code compiles
+    /**
+     * Unions the alive cell (i,j) of a grid being written with its alive neighbors
+     * that were written before it: W, NW, N and NE, and on the last column of a
+     * toroidal grid also E, which is the first column of the same row
+     * @return int for the number of successful unions
+     */
+    private int unionWritten (boolean[][] newGrid, int i, int j) {
+        int cols = newGrid[0].length;
+        int cell = i * cols + j;
+        parent[cell] = cell;
+        int unions = 0;
+        if (j > 0 && newGrid[i][j - 1] && union(cell, cell - 1)) unions++;
+        if (toroidal && j == cols - 1 && newGrid[i][0] && union(cell, i * cols)) unions++;
+        if (i > 0)
+        unions += unionBelow(newGrid, i - 1, j, i);
+        return unions;
+    }
+
+    /**
+     * Unions the alive cell (below,j) with the alive cells of row above that touch it
+     * @return int for the number of successful unions
+     */
+    private int unionBelow (boolean[][] newGrid, int above, int j, int below) {
+        int cols = newGrid[0].length;
+        int cell = below * cols + j;
+        int left = j > 0 ? j - 1 : (toroidal ? cols - 1 : -1);
+        int right = j < cols - 1 ? j + 1 : (toroidal ? 0 : -1);
+        int unions = 0;
+        if (left >= 0 && newGrid[above][left] && union(cell, above * cols + left)) unions++;
+        if (newGrid[above][j] && union(cell, above * cols + j)) unions++;
+        if (right >= 0 && newGrid[above][right] && union(cell, above * cols + right)) unions++;
+        return unions;
+    }
+
+    /**
+     * Packs one column of a 3x3 neighborhood into 3 bits (up, middle, down)
+     * @param col column of the cells, wrapped or treated as DEAD when past an edge
+     * @return int with bit 0 for up, bit 1 for mid and bit 2 for down
+     */
+    private int column (boolean[] up, boolean[] mid, boolean[] down, int col) {
+        if (col < 0 || col >= mid.length) {
+            if (!toroidal)
+            return 0;
+            col = col < 0 ? mid.length - 1 : 0;
+        }
+        int bits = mid[col] ? 2 : 0;
+        if (up != null && up[col]) bits |= 1;
+        if (down != null && down[col]) bits |= 4;
+        return bits;
     }
 
     /**
@@ -181,7 +317,9 @@ public class GameOfLife
      * Updates totalAliveCells instance variable
      */
     public void nextGeneration () {
-            grid = computeNewGrid();
+            boolean[][] newGrid = new boolean[grid.length][grid[0].length];
+            totalAliveCells += step(newGrid, communityTracking);
+            grid = newGrid;
         // WRITE YOUR CODE HERE
     }
 
@@ -190,75 +328,119 @@ public class GameOfLife
      * @param n number of iterations that the grid will go through to compute a new grid
      */
     public void nextGeneration (int n) {
-        for(int i = 0; i < n; i++)
-            grid = computeNewGrid();
+        for(int i = 0; i < n; i++) {
+            boolean[][] newGrid = new boolean[grid.length][grid[0].length];
+            totalAliveCells += step(newGrid, communityTracking && i == n - 1);
+            grid = newGrid;
+        }
         // WRITE YOUR CODE HERE
     }
 
+    /**
+     * Counts the alive cells in the current grid
+     * @return int for number of alive cells in grid
+     */
+    private int countAliveCells () {
+        int count = 0;
+        for (int i = 0; i < grid.length; i++) {
+            for (int j = 0; j < grid[0].length; j++) {
+                if (grid[i][j])
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Turns community tracking on or off. While it is on, nextGeneration() labels the
+     * communities of each new generation in the same pass that computes it, so
+     * numOfCommunities() needs no pass of its own.
+     * The count assumes the grid is only changed through this class.
+     * @param on true to update the community count during nextGeneration()
+     */
+    public void setCommunityTracking (boolean on) {
+        communityTracking = on;
+        communities = -1;
+    }
+
     /**
      * Determines the number of separate cell communities in the grid
      * @return the number of communities in the grid, communities can be formed from edges
      */
-    private void helper(ArrayList<Integer> roots, WeightedQuickUnionUF u, int[][] dirs)
+    public int numOfCommunities() 
     {
-        for (int i = 0; i < grid.length; i++)
-        {
-            for (int j = 0; j < grid[0].length; j++)
-            {
-                if (grid[i][j])
-                {
-
-
-                    for (int k = 0; k < dirs.length; k++) 
-                    {
-                        int currRow = i + dirs[k][0];
-                        int currCol = j + dirs[k][1];
-                        if (currRow < 0) {
-                            currRow = grid.length - 1;
-                        }
-                        else if (currRow >= grid.length) {
-                            currRow = 0;
-                        }
-            
-                        if (currCol < 0) {
-                            currCol = grid[0].length - 1;
-                        }
-                        else if (currCol >= grid[0].length) {
-                            currCol = 0;
-                        }
-            
-                        if  (grid[currRow][currCol])
-                        {
-                            if (roots.contains(u.find(currRow, currCol)))
-                            {
-                                roots.remove(Integer.valueOf(u.find(i, j)));
-                                u.union(currRow, currCol, i, j);
-                            }
-                            else
-                            {
-                                u.union(i, j, currRow, currCol);
-                            }
-
-                        } 
-                    }
-                    if (!(roots.contains(u.find(i,j))))
-                    roots.add(u.find(i, j));
-                }
+        if (communityTracking && communities >= 0)
+        return communities;
+        communities = labelCommunities();
+        return communities;
+    }
 
+    /**
+     * Labels the communities of the grid with a union-find over a flat parent array.
+     * Every pair of neighbors is one of E, S, SE or SW of the other, so each alive cell
+     * is only unioned in those four directions (wrapping around the edges), and the number
+     * of communities is the number of alive cells minus the number of successful unions.
+     * @return the number of communities in the grid
+     */
+    private int labelCommunities () {
+        int rows = grid.length;
+        int cols = grid[0].length;
+        if (parent == null || parent.length != rows * cols) {
+            parent = new int[rows * cols];
+        }
+        int count = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (grid[i][j]) {
+                    parent[i * cols + j] = i * cols + j;
+                    count++;
+                }
+            }
+        }
+        for (int i = 0; i < rows; i++) {
+            int down = i < rows - 1 ? i + 1 : (toroidal ? 0 : -1);
+            for (int j = 0; j < cols; j++) {
+                if (!grid[i][j])
+                continue;
+                int left = j > 0 ? j - 1 : (toroidal ? cols - 1 : -1);
+                int right = j < cols - 1 ? j + 1 : (toroidal ? 0 : -1);
+                int cell = i * cols + j;
+                if (right >= 0 && grid[i][right] && union(cell, i * cols + right)) count--;
+                if (down < 0)
+                continue;
+                if (left >= 0 && grid[down][left] && union(cell, down * cols + left)) count--;
+                if (grid[down][j] && union(cell, down * cols + j)) count--;
+                if (right >= 0 && grid[down][right] && union(cell, down * cols + right)) count--;
             }
         }
+        return count;
     }
 
-    public int numOfCommunities() 
-    {
-        ArrayList<Integer> roots = new ArrayList<Integer>();
-        WeightedQuickUnionUF u = new WeightedQuickUnionUF(grid.length,grid[0].length);
-        int[][] dirs = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    /**
+     * Finds the root of a cell, halving the path to it along the way
+     */
+    private int find (int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
 
-    helper(roots, u, dirs);
-    roots.clear();
-    helper(roots,u,dirs);
-    return roots.size();
+    /**
+     * Joins the communities of two cells
+     * @return true if the cells were in different communities
+     */
+    private boolean union (int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB)
+        return false;
+        if (rootA < rootB)
+        parent[rootB] = rootA;
+        else
+        parent[rootA] = rootB;
+        return true;
     }
 
 }
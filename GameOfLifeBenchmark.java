@@ -0,0 +1,165 @@
+package conwaygame;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks for the Game of Life engines. Every benchmark runs on square boards
+ * from 64x64 up to 8192x8192 with three kinds of pattern:
+ * - soup: a random board where about a third of the cells are ALIVE
+ * - gliderGun: a Gosper glider gun in every 64x64 block, so the board keeps changing
+ * - sparse: a mostly empty board with about one ALIVE cell per thousand
+ *
+ * One benchmark operation is one generation (or one call for the query methods), so
+ * ops/sec is generations per second. Running main() adds the GC profiler, whose
+ * gc.alloc.rate.norm column is the number of bytes allocated per generation.
+ *
+ * Boards are reset before every measurement iteration; within an iteration the
+ * stepping benchmarks keep evolving the same board, as a long simulation would.
+ *
+ * Requires jmh-core and jmh-generator-annprocess on the classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx16g"})
+public class GameOfLifeBenchmark
+{
+
+    private static final long SEED = 112L;
+
+    private static final String[] GLIDER_GUN = {
+        "........................O...........",
+        "......................O.O...........",
+        "............OO......OO............OO",
+        "...........O...O....OO............OO",
+        "OO........O.....O...OO..............",
+        "OO........O...O.OO....O.O...........",
+        "..........O.....O.......O...........",
+        "...........O...O....................",
+        "............OO......................",
+    };
+
+    @Param({"64", "512", "2048", "8192"})
+    public int size;
+
+    @Param({"soup", "gliderGun", "sparse"})
+    public String pattern;
+
+    private GameOfLife game;
+    private BitBoard board;
+    private BitBoard trackedBoard;
+
+    @Setup(Level.Iteration)
+    public void setUp () {
+        boolean[][] grid = makeGrid(size, pattern);
+        game = new GameOfLife(grid);
+        board = new BitBoard(grid);
+        trackedBoard = new BitBoard(grid);
+        trackedBoard.setChangeTracking(true);
+    }
+
+    @Benchmark
+    public boolean[][] computeNewGrid () {
+        return game.computeNewGrid();
+    }
+
+    @Benchmark
+    public int nextGeneration () {
+        game.nextGeneration();
+        return game.getTotalAliveCells();
+    }
+
+    @Benchmark
+    public int numOfCommunities () {
+        return game.numOfCommunities();
+    }
+
+    @Benchmark
+    public boolean isAlive () {
+        return game.isAlive();
+    }
+
+    @Benchmark
+    public long bitBoardNextGeneration () {
+        board.nextGeneration();
+        return board.getTotalAliveCells();
+    }
+
+    @Benchmark
+    public long bitBoardNextGenerationParallel () {
+        board.nextGenerationParallel(1);
+        return board.getTotalAliveCells();
+    }
+
+    @Benchmark
+    public long bitBoardNextGenerationTracked () {
+        trackedBoard.nextGeneration();
+        return trackedBoard.getTotalAliveCells();
+    }
+
+    /**
+     * Builds a size x size grid holding the named pattern
+     * @param size number of rows and columns
+     * @param pattern soup, gliderGun or sparse
+     * @return boolean[][] where true denotes an ALIVE cell
+     */
+    static boolean[][] makeGrid (int size, String pattern) {
+        boolean[][] grid = new boolean[size][size];
+        Random random = new Random(SEED);
+        if (pattern.equals("soup") || pattern.equals("sparse")) {
+            double density = pattern.equals("soup") ? 0.35 : 0.001;
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    grid[i][j] = random.nextDouble() < density;
+                }
+            }
+        }
+        else if (pattern.equals("gliderGun")) {
+            for (int top = 0; top + GLIDER_GUN.length <= size; top += 64) {
+                for (int left = 0; left + GLIDER_GUN[0].length() <= size; left += 64) {
+                    for (int i = 0; i < GLIDER_GUN.length; i++) {
+                        for (int j = 0; j < GLIDER_GUN[i].length(); j++) {
+                            grid[top + i][left + j] = GLIDER_GUN[i].charAt(j) == 'O';
+                        }
+                    }
+                }
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Unknown pattern " + pattern);
+        }
+        return grid;
+    }
+
+    /**
+     * Runs every benchmark in this class with the GC profiler, which reports the
+     * allocation rate per generation alongside ops/sec
+     */
+    public static void main (String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GameOfLifeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,491 @@
+package conwaygame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * HashLife engine for Conway's Game of Life. The board is held in a canonical quadtree:
+ * every distinct square of cells is stored once, and the result of advancing a square
+ * is memoized on its node. Repetitive patterns therefore advance by 2^k generations in
+ * roughly logarithmic time instead of time linear in the generation count and board area.
+ *
+ * The board wraps around its edges like GameOfLife. The torus is unrolled into the
+ * infinite plane by tiling it, the tiled square is advanced, and the board is read
+ * back out of the middle of the result. When both sides are powers of two the tiled
+ * square is made of copies of a single node, so a jump never touches individual cells.
+ *
+ * Once the canonical table holds more than maxNodes nodes, even in the middle of a jump,
+ * the nodes that are not reachable from the board or from the squares being advanced
+ * are dropped, so a single large jump cannot grow the table without bound. The limit
+ * only grows when the reachable nodes alone fill half of it.
+ */
+public class HashLife
+{
+
+    private static final int DEFAULT_MAX_NODES = 1 << 22;
+
+    private static final Node DEAD_LEAF = new Node(false);
+    private static final Node ALIVE_LEAF = new Node(true);
+
+    private final int rows;
+    private final int cols;
+    private final boolean powerOfTwo;  // both sides are powers of two
+    private final int boardLevel;      // level of the square holding one copy of the torus
+    private int budget;                // canonical table size that triggers a collection
+
+    private HashMap<Node, Node> nodes = new HashMap<Node, Node>();
+    private Node[] emptyNodes = new Node[64];
+    private ArrayList<Node> working = new ArrayList<Node>(); // squares the running jump still needs
+    private Node board;                // powerOfTwo: the torus tiled into a square of boardLevel
+    private boolean[][] grid;          // otherwise: the current generation as a grid
+    private long generation;
+
+    /**
+     * Creates a HashLife engine holding the same pattern as a GameOfLife grid
+     * @param grid boolean grid where true denotes an ALIVE cell
+     */
+    public HashLife (boolean[][] grid) {
+        this(grid, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Creates a HashLife engine holding the same pattern as a GameOfLife grid
+     * @param grid boolean grid where true denotes an ALIVE cell
+     * @param maxNodes number of canonical nodes kept before unreachable ones are collected
+     */
+    public HashLife (boolean[][] grid, int maxNodes) {
+        rows = grid.length;
+        cols = grid[0].length;
+        budget = maxNodes;
+        powerOfTwo = Integer.bitCount(rows) == 1 && Integer.bitCount(cols) == 1;
+        boardLevel = ceilLog2(Math.max(rows, cols));
+
+        this.grid = new boolean[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(grid[i], 0, this.grid[i], 0, cols);
+        }
+        if (powerOfTwo) {
+            board = buildTiled(this.grid, boardLevel, 0, 0, new HashMap<Long, Node>());
+            this.grid = null;
+        }
+    }
+
+    /**
+     * Returns the number of generations advanced since this engine was created
+     * @return long for the current generation number
+     */
+    public long getGeneration () {
+        return generation;
+    }
+
+    /**
+     * Returns the status of the cell at (row,col): ALIVE or DEAD
+     * @param row row position of the cell
+     * @param col column position of the cell
+     * @return true or false value "ALIVE" or "DEAD" (state of the cell)
+     */
+    public boolean getCellState (int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("Cell (" + row + "," + col + ") is outside the board");
+        }
+        if (!powerOfTwo) {
+            return grid[row][col];
+        }
+        Node node = board;
+        for (int level = boardLevel; level > 0; level--) {
+            int half = 1 << (level - 1);
+            boolean south = row >= half;
+            boolean east = col >= half;
+            node = south ? (east ? node.se : node.sw) : (east ? node.ne : node.nw);
+            if (south) row -= half;
+            if (east) col -= half;
+        }
+        return node.alive;
+    }
+
+    /**
+     * Returns totalAliveCells
+     * @return long for total number of alive cells in the board
+     */
+    public long getTotalAliveCells () {
+        if (!powerOfTwo) {
+            long count = 0;
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    if (grid[i][j]) count++;
+                }
+            }
+            return count;
+        }
+        long side = 1L << boardLevel;
+        return board.population / ((side / rows) * (side / cols));
+    }
+
+    /**
+     * Returns the board in the GameOfLife grid representation
+     * @return boolean[][] where true denotes an ALIVE cell (this is a new 2D array)
+     */
+    public boolean[][] getGrid () {
+        boolean[][] result = new boolean[rows][cols];
+        if (powerOfTwo) {
+            extract(board, boardLevel, 0, 0, result);
+        }
+        else {
+            for (int i = 0; i < rows; i++) {
+                System.arraycopy(grid[i], 0, result[i], 0, cols);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Advances the board by multiple (n) generations, one power-of-two jump per set bit of n
+     * @param n number of generations to advance
+     */
+    public void nextGeneration (long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Cannot advance a negative number of generations");
+        }
+        for (int k = 62; k >= 0; k--) {
+            if ((n & (1L << k)) != 0) {
+                jump(k);
+            }
+        }
+    }
+
+    /**
+     * Advances the board by exactly 2^k generations
+     * @param k log2 of the number of generations to advance
+     */
+    public void jump (int k) {
+        if (k < 0 || k > 62) {
+            throw new IllegalArgumentException("Jump size must be between 2^0 and 2^62 generations");
+        }
+        if (powerOfTwo) {
+            // Offsets of 2^(level-2) are whole periods of the torus, so the tiled square is
+            // copies of board and the new board is the top-left corner of the result
+            int level = Math.max(k + 2, boardLevel + 2);
+            Node tiled = board;
+            for (int l = boardLevel; l < level; l++) {
+                tiled = join(tiled, tiled, tiled, tiled);
+            }
+            Node result = successor(tiled, k);
+            for (int l = level - 1; l > boardLevel; l--) {
+                result = result.nw;
+            }
+            board = result;
+        }
+        else {
+            // Shift the tiling so the result, which starts 2^(level-2) cells into the
+            // tiled square, starts at cell (0,0) of the torus
+            int level = Math.max(k + 2, boardLevel + 1);
+            int rowStart = (rows - powerOfTwoMod(level - 2, rows)) % rows;
+            int colStart = (cols - powerOfTwoMod(level - 2, cols)) % cols;
+            Node tiled = buildTiled(grid, level, rowStart, colStart, new HashMap<Long, Node>());
+            boolean[][] result = new boolean[rows][cols];
+            extract(successor(tiled, k), level - 1, 0, 0, result);
+            grid = result;
+        }
+        generation += 1L << k;
+        if (nodes.size() > budget) {
+            collect();
+        }
+    }
+
+    /*
+     * Returns the center half of n advanced by 2^j generations (n.level >= 2, j <= n.level - 2)
+     */
+    private Node successor (Node n, int j) {
+        if (n.population == 0) {
+            return empty(n.level - 1);
+        }
+        if (n.results != null && n.results[j] != null) {
+            return n.results[j];
+        }
+        // n and every square built below stay roots until this step is done, so a
+        // collection cannot drop the results the rest of the step is about to reuse;
+        // n is added first so a collection here keeps it too, with its results
+        int saved = working.size();
+        working.add(n);
+        if (nodes.size() > budget) {
+            collect();
+        }
+        Node result;
+        if (n.level == 2) {
+            result = lifeFourByFour(n);
+        }
+        else {
+            Node n00 = n.nw;
+            Node n01 = save(horizontal(n.nw, n.ne));
+            Node n02 = n.ne;
+            Node n10 = save(vertical(n.nw, n.sw));
+            Node n11 = save(center(n));
+            Node n12 = save(vertical(n.ne, n.se));
+            Node n20 = n.sw;
+            Node n21 = save(horizontal(n.sw, n.se));
+            Node n22 = n.se;
+
+            // A full-size step advances both halves; a smaller step only advances the second
+            boolean full = j == n.level - 2;
+            Node c00 = save(full ? successor(n00, j - 1) : center(n00));
+            Node c01 = save(full ? successor(n01, j - 1) : center(n01));
+            Node c02 = save(full ? successor(n02, j - 1) : center(n02));
+            Node c10 = save(full ? successor(n10, j - 1) : center(n10));
+            Node c11 = save(full ? successor(n11, j - 1) : center(n11));
+            Node c12 = save(full ? successor(n12, j - 1) : center(n12));
+            Node c20 = save(full ? successor(n20, j - 1) : center(n20));
+            Node c21 = save(full ? successor(n21, j - 1) : center(n21));
+            Node c22 = save(full ? successor(n22, j - 1) : center(n22));
+
+            int step = full ? j - 1 : j;
+            Node r00 = save(successor(save(join(c00, c01, c10, c11)), step));
+            Node r01 = save(successor(save(join(c01, c02, c11, c12)), step));
+            Node r10 = save(successor(save(join(c10, c11, c20, c21)), step));
+            Node r11 = successor(save(join(c11, c12, c21, c22)), step);
+            result = join(r00, r01, r10, r11);
+        }
+        if (n.results == null) {
+            n.results = new Node[n.level - 1];
+        }
+        n.results[j] = result;
+        working.subList(saved, working.size()).clear();
+        return result;
+    }
+
+    private Node save (Node node) {
+        working.add(node);
+        return node;
+    }
+
+    /*
+     * Applies the rules once to a 4x4 node, returning its center 2x2 node
+     */
+    private Node lifeFourByFour (Node n) {
+        int bits = 0;
+        for (int r = 0; r < 4; r++) {
+            for (int c = 0; c < 4; c++) {
+                Node quadrant = r < 2 ? (c < 2 ? n.nw : n.ne) : (c < 2 ? n.sw : n.se);
+                Node leaf = (r & 1) == 0 ? ((c & 1) == 0 ? quadrant.nw : quadrant.ne)
+                                         : ((c & 1) == 0 ? quadrant.sw : quadrant.se);
+                if (leaf.alive) bits |= 1 << (r * 4 + c);
+            }
+        }
+        return join(nextCell(bits, 1, 1), nextCell(bits, 1, 2), nextCell(bits, 2, 1), nextCell(bits, 2, 2));
+    }
+
+    private static Node nextCell (int bits, int row, int col) {
+        int count = 0;
+        for (int r = row - 1; r <= row + 1; r++) {
+            for (int c = col - 1; c <= col + 1; c++) {
+                if ((r != row || c != col) && (bits & (1 << (r * 4 + c))) != 0) count++;
+            }
+        }
+        boolean alive = (bits & (1 << (row * 4 + col))) != 0;
+        return count == 3 || (alive && count == 2) ? ALIVE_LEAF : DEAD_LEAF;
+    }
+
+    private Node center (Node n) {
+        return join(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+    }
+
+    private Node horizontal (Node w, Node e) {
+        return join(w.ne, e.nw, w.se, e.sw);
+    }
+
+    private Node vertical (Node n, Node s) {
+        return join(n.sw, n.se, s.nw, s.ne);
+    }
+
+    /*
+     * Returns the canonical node with the given quadrants
+     */
+    private Node join (Node nw, Node ne, Node sw, Node se) {
+        Node probe = new Node(nw, ne, sw, se);
+        Node canonical = nodes.get(probe);
+        if (canonical == null) {
+            nodes.put(probe, probe);
+            canonical = probe;
+        }
+        return canonical;
+    }
+
+    private Node empty (int level) {
+        if (level == 0) {
+            return DEAD_LEAF;
+        }
+        if (emptyNodes[level] == null) {
+            Node child = empty(level - 1);
+            emptyNodes[level] = join(child, child, child, child);
+        }
+        return emptyNodes[level];
+    }
+
+    /*
+     * Builds the node of the given level whose cell (r,c) is torus cell
+     * ((rowStart + r) mod rows, (colStart + c) mod cols). Squares that start at the
+     * same torus cell are identical, so they are built once per level.
+     */
+    private Node buildTiled (boolean[][] torus, int level, int rowStart, int colStart, HashMap<Long, Node> built) {
+        if (level == 0) {
+            return torus[rowStart][colStart] ? ALIVE_LEAF : DEAD_LEAF;
+        }
+        long key = ((long) level << 56) | ((long) rowStart << 28) | colStart;
+        Node node = built.get(key);
+        if (node == null) {
+            int rowHalf = (rowStart + powerOfTwoMod(level - 1, rows)) % rows;
+            int colHalf = (colStart + powerOfTwoMod(level - 1, cols)) % cols;
+            node = join(buildTiled(torus, level - 1, rowStart, colStart, built),
+                        buildTiled(torus, level - 1, rowStart, colHalf, built),
+                        buildTiled(torus, level - 1, rowHalf, colStart, built),
+                        buildTiled(torus, level - 1, rowHalf, colHalf, built));
+            built.put(key, node);
+        }
+        return node;
+    }
+
+    /*
+     * Copies the alive cells of node, whose top-left cell is (row,col), that fall inside out
+     */
+    private void extract (Node node, int level, long row, long col, boolean[][] out) {
+        if (node.population == 0 || row >= rows || col >= cols) {
+            return;
+        }
+        if (level == 0) {
+            out[(int) row][(int) col] = true;
+            return;
+        }
+        long half = 1L << (level - 1);
+        extract(node.nw, level - 1, row, col, out);
+        extract(node.ne, level - 1, row, col + half, out);
+        extract(node.sw, level - 1, row + half, col, out);
+        extract(node.se, level - 1, row + half, col + half, out);
+    }
+
+    /*
+     * Drops the canonical nodes and memoized results that are not reachable from the
+     * board, the empty squares or the squares the running jump still needs. Dropped
+     * nodes still held by a caller stay valid, they are just no longer shared.
+     * The results of squares that nothing reaches any more are often exactly what the
+     * rest of a jump reuses, so if a collection cannot bring the table under half of
+     * budget, budget doubles; otherwise a jump could keep recomputing them forever.
+     */
+    private void collect () {
+        IdentityHashMap<Node, Node> live = mark();
+        HashMap<Node, Node> kept = new HashMap<Node, Node>(live.size() * 2);
+        for (Node node : nodes.keySet()) {
+            if (live.containsKey(node)) {
+                kept.put(node, node);
+            }
+            else {
+                node.results = null;
+            }
+        }
+        nodes = kept;
+        if (kept.size() > budget / 2) {
+            budget = (int) Math.min(Integer.MAX_VALUE / 2, 2L * budget);
+        }
+    }
+
+    /*
+     * Returns the nodes reachable from the roots through quadrants and memoized results
+     */
+    private IdentityHashMap<Node, Node> mark () {
+        IdentityHashMap<Node, Node> live = new IdentityHashMap<Node, Node>();
+        if (board != null) {
+            mark(board, live);
+        }
+        for (Node node : emptyNodes) {
+            if (node != null) mark(node, live);
+        }
+        for (Node node : working) {
+            mark(node, live);
+        }
+        return live;
+    }
+
+    private void mark (Node node, IdentityHashMap<Node, Node> live) {
+        if (node.level == 0 || live.put(node, node) != null) {
+            return;
+        }
+        mark(node.nw, live);
+        mark(node.ne, live);
+        mark(node.sw, live);
+        mark(node.se, live);
+        if (node.results != null) {
+            for (Node result : node.results) {
+                if (result != null) mark(result, live);
+            }
+        }
+    }
+
+    private static int powerOfTwoMod (int exponent, int modulus) {
+        long result = 1 % modulus;
+        for (int i = 0; i < exponent; i++) {
+            result = (result * 2) % modulus;
+        }
+        return (int) result;
+    }
+
+    private static int ceilLog2 (int n) {
+        return n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    /*
+     * A square of 2^level by 2^level cells. Nodes are canonical, so two nodes are the
+     * same square exactly when they are the same object, and equality of a new node
+     * only needs to compare its quadrants by identity.
+     */
+    private static class Node
+    {
+        final Node nw, ne, sw, se;
+        final int level;
+        final long population;   // saturates at Long.MAX_VALUE on huge tiled squares
+        final boolean alive;     // only meaningful for leaves
+        final int hash;
+        Node[] results;          // results[j] is the center advanced by 2^j generations
+
+        Node (boolean alive) {
+            nw = ne = sw = se = null;
+            level = 0;
+            population = alive ? 1 : 0;
+            this.alive = alive;
+            hash = alive ? 1 : 0;
+        }
+
+        Node (Node nw, Node ne, Node sw, Node se) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            level = nw.level + 1;
+            population = saturatedAdd(saturatedAdd(nw.population, ne.population),
+                                      saturatedAdd(sw.population, se.population));
+            alive = false;
+            int h = System.identityHashCode(nw);
+            h = h * 31 + System.identityHashCode(ne);
+            h = h * 31 + System.identityHashCode(sw);
+            hash = h * 31 + System.identityHashCode(se);
+        }
+
+        private static long saturatedAdd (long a, long b) {
+            long sum = a + b;
+            return sum < 0 ? Long.MAX_VALUE : sum;
+        }
+
+        @Override
+        public int hashCode () {
+            return hash;
+        }
+
+        @Override
+        public boolean equals (Object other) {
+            if (!(other instanceof Node)) {
+                return false;
+            }
+            Node node = (Node) other;
+            return nw == node.nw && ne == node.ne && sw == node.sw && se == node.se;
+        }
+    }
+
+}
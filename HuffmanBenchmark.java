@@ -0,0 +1,334 @@
+package huffman;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks for the Huffman pipeline, stage by stage and end to end, on a fixed corpus
+ * generated from a seed:
+ * - text: English-like words with a skewed word distribution
+ * - logs: timestamped log lines with a few levels and components
+ * - single: one repeated character, the list.size() == 1 case of makeSortedList()
+ * - random: uniformly random bytes
+ *
+ * The JMH benchmarks time one call of each stage per operation; with the GC profiler,
+ * gc.alloc.rate.norm divided by the size is the allocation per input byte. Running
+ * main() without arguments instead prints a report of MB/s, compression ratio, peak
+ * heap and allocation per byte for every corpus and size up to 64 MB (pass a larger
+ * maximum size in bytes to go up to 1 GB); "main jmh" runs the JMH benchmarks.
+ *
+ * Requires jmh-core and jmh-generator-annprocess on the classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class HuffmanBenchmark {
+    private static final long SEED = 112L;
+    private static final String[] CORPORA = {"text", "logs", "single", "random"};
+    private static final long[] SIZES = {1L << 10, 1L << 20, 64L << 20, 1L << 30};
+
+    private static final String[] WORDS = {
+        "the", "of", "and", "to", "a", "in", "is", "it", "that", "for", "was", "on", "with", "as",
+        "be", "at", "by", "this", "had", "from", "but", "not", "what", "all", "were", "when",
+        "we", "there", "can", "an", "your", "which", "their", "said", "if", "will", "each",
+        "about", "how", "up", "out", "them", "then", "she", "many", "some", "so", "these",
+        "would", "other", "into", "has", "more", "her", "two", "like", "him", "see", "time",
+        "could", "no", "make", "than", "first", "been", "its", "who", "now", "people", "my",
+        "made", "over", "did", "down", "only", "way", "find", "use", "may", "water", "long",
+        "little", "very", "after", "words", "called", "just", "where", "most", "know", "huffman",
+    };
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] COMPONENTS = {"auth", "db.pool", "http.server", "scheduler", "cache"};
+
+    @Param({"text", "logs", "single", "random"})
+    public String corpus;
+
+    @Param({"1KB", "1MB", "64MB", "1GB"})
+    public String size;
+
+    private Path directory;
+    private String inputFile;
+    private String encodedFile;
+    private String decodedFile;
+    private HuffmanCoding coding;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("huffman-bench");
+        inputFile = directory.resolve(corpus + ".txt").toString();
+        encodedFile = directory.resolve(corpus + ".huf").toString();
+        decodedFile = directory.resolve(corpus + ".out").toString();
+        writeCorpus(corpus, parseSize(size), Path.of(inputFile));
+
+        // every stage reads the state left by the ones before it
+        coding = new HuffmanCoding(inputFile);
+        coding.makeSortedList();
+        coding.makeTree();
+        coding.makeEncodings();
+        coding.encode(encodedFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (String file : new String[] {inputFile, encodedFile, decodedFile}) Files.deleteIfExists(Path.of(file));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Object makeSortedList() {
+        coding.makeSortedList();
+        return coding.getSortedCharFreqList();
+    }
+
+    @Benchmark
+    public Object makeTree() {
+        coding.makeTree();
+        return coding.getHuffmanRoot();
+    }
+
+    @Benchmark
+    public Object makeEncodings() {
+        coding.makeEncodings();
+        return coding.getEncodings();
+    }
+
+    @Benchmark
+    public void encode() {
+        coding.encode(encodedFile);
+    }
+
+    @Benchmark
+    public void decode() {
+        coding.decode(encodedFile, decodedFile);
+    }
+
+    @Benchmark
+    public void endToEnd() {
+        HuffmanCoding fresh = new HuffmanCoding(inputFile);
+        fresh.makeSortedList();
+        fresh.makeTree();
+        fresh.makeEncodings();
+        fresh.encode(encodedFile);
+        fresh.decode(encodedFile, decodedFile);
+    }
+
+    /**
+     * Writes size bytes of the named corpus to file, the same bytes for the same
+     * arguments on every run
+     * @param corpus text, logs, single or random
+     */
+    static void writeCorpus(String corpus, long size, Path file) throws IOException {
+        Random random = new Random(SEED);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            byte[] chunk = new byte[1 << 16];
+            StringBuilder text = new StringBuilder();
+            for (long written = 0; written < size; ) {
+                int n;
+                if (corpus.equals("single")) {
+                    Arrays.fill(chunk, (byte) 'a');
+                    n = chunk.length;
+                }
+                else if (corpus.equals("random")) {
+                    random.nextBytes(chunk);
+                    n = chunk.length;
+                }
+                else if (corpus.equals("text") || corpus.equals("logs")) {
+                    text.setLength(0);
+                    while (text.length() < chunk.length) {
+                        if (corpus.equals("text")) appendSentence(text, random);
+                        else appendLogLine(text, random, written + text.length());
+                    }
+                    byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+                    n = bytes.length;
+                    if (chunk.length < n) chunk = new byte[n];
+                    System.arraycopy(bytes, 0, chunk, 0, n);
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown corpus " + corpus);
+                }
+                int length = (int) Math.min(n, size - written);
+                out.write(chunk, 0, length);
+                written += length;
+            }
+        }
+    }
+
+    private static void appendSentence(StringBuilder text, Random random) {
+        int words = 4 + random.nextInt(12);
+        for (int i = 0; i < words; i++) {
+            // squaring a uniform number favours the first, most common words
+            double u = random.nextDouble();
+            String word = WORDS[(int) (u * u * WORDS.length)];
+            if (i == 0) word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            text.append(word).append(i == words - 1 ? ". " : " ");
+        }
+        if (random.nextInt(6) == 0) text.append('\n');
+    }
+
+    private static void appendLogLine(StringBuilder text, Random random, long position) {
+        long millis = position / 8;
+        text.append(String.format("2024-05-17 %02d:%02d:%02d.%03d %-5s [%s] request id=%d status=%d took %dms%n",
+                (millis / 3600000) % 24, (millis / 60000) % 60, (millis / 1000) % 60, millis % 1000,
+                LEVELS[random.nextInt(LEVELS.length)], COMPONENTS[random.nextInt(COMPONENTS.length)],
+                random.nextInt(1000000), random.nextInt(10) == 0 ? 500 : 200, random.nextInt(300)));
+    }
+
+    /**
+     * Parses sizes like 1KB, 64MB or 1GB
+     */
+    static long parseSize(String size) {
+        String unit = size.replaceAll("[0-9]", "");
+        long number = Long.parseLong(size.substring(0, size.length() - unit.length()));
+        switch (unit) {
+            case "": case "B": return number;
+            case "KB": return number << 10;
+            case "MB": return number << 20;
+            case "GB": return number << 30;
+            default: throw new IllegalArgumentException("Unknown size unit " + unit);
+        }
+    }
+
+    /*
+     * One stage of the report, run on the corpus file of a row
+     */
+    private interface Stage {
+        void run() throws IOException;
+    }
+
+    /**
+     * Prints a report for every corpus and size up to maxSize: for each stage the
+     * throughput in MB of input per second, the peak heap while it ran and the bytes
+     * it allocated per input byte, and per row the compression ratio of encode()
+     * and of HuffmanOutputStream (block mode, order-1 allowed).
+     */
+    static void report(long maxSize) throws IOException {
+        Path directory = Files.createTempDirectory("huffman-report");
+        System.out.printf("%-7s %6s %-15s %10s %12s %12s%n", "corpus", "size", "stage", "MB/s", "peak heap MB", "alloc B/byte");
+        for (String corpus : CORPORA) {
+            for (long size : SIZES) {
+                if (size > maxSize) continue;
+                Path input = directory.resolve(corpus);
+                Path encoded = directory.resolve(corpus + ".huf");
+                Path decoded = directory.resolve(corpus + ".out");
+                Path block = directory.resolve(corpus + ".hufs");
+                writeCorpus(corpus, size, input);
+                HuffmanCoding coding = new HuffmanCoding(input.toString());
+
+                measure(corpus, size, "makeSortedList", coding::makeSortedList);
+                measure(corpus, size, "makeTree", coding::makeTree);
+                measure(corpus, size, "makeEncodings", coding::makeEncodings);
+                measure(corpus, size, "encode", () -> coding.encode(encoded.toString()));
+                measure(corpus, size, "decode", () -> coding.decode(encoded.toString(), decoded.toString()));
+                measure(corpus, size, "endToEnd", () -> {
+                    HuffmanCoding fresh = new HuffmanCoding(input.toString());
+                    fresh.makeSortedList();
+                    fresh.makeTree();
+                    fresh.makeEncodings();
+                    fresh.encode(encoded.toString());
+                    fresh.decode(encoded.toString(), decoded.toString());
+                });
+                measure(corpus, size, "blockEncode", () -> {
+                    try (InputStream in = Files.newInputStream(input);
+                         OutputStream out = new HuffmanOutputStream(Files.newOutputStream(block),
+                                                                    BlockHuffman.DEFAULT_BLOCK_SIZE, true)) {
+                        in.transferTo(out);
+                    }
+                });
+                measure(corpus, size, "blockDecode", () -> {
+                    try (InputStream in = new HuffmanInputStream(Files.newInputStream(block));
+                         OutputStream out = Files.newOutputStream(decoded)) {
+                        in.transferTo(out);
+                    }
+                });
+                System.out.printf("%-7s %6s %-15s ratio %.4f, block mode %.4f%n", corpus, formatSize(size), "",
+                                  Files.size(encoded) / (double) size, Files.size(block) / (double) size);
+
+                for (Path file : new Path[] {input, encoded, decoded, block}) Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    private static void measure(String corpus, long size, String name, Stage stage) throws IOException {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        stage.run();
+        long nanos = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf("%-7s %6s %-15s %10.1f %12.1f %12s%n", corpus, formatSize(size), name,
+                          size / 1e6 / (nanos / 1e9), peak / 1e6,
+                          allocated < 0 ? "n/a" : String.format("%.2f", allocated / (double) size));
+    }
+
+    /*
+     * Bytes allocated by this thread so far, or -1 if the JVM does not report it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static String formatSize(long size) {
+        if (size >= 1L << 30) return (size >> 30) + "GB";
+        if (size >= 1L << 20) return (size >> 20) + "MB";
+        if (size >= 1L << 10) return (size >> 10) + "KB";
+        return size + "B";
+    }
+
+    /**
+     * With "jmh" as the first argument runs the JMH benchmarks with the GC profiler,
+     * otherwise prints the corpus report for sizes up to the first argument in bytes
+     * (64 MB by default)
+     */
+    public static void main(String[] args) throws IOException, RunnerException {
+        if (args.length > 0 && args[0].equals("jmh")) {
+            new Runner(new OptionsBuilder()
+                    .include(HuffmanBenchmark.class.getSimpleName())
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+            return;
+        }
+        report(args.length > 0 ? parseSize(args[0]) : 64L << 20);
+    }
+}
@@ -0,0 +1,191 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * NIO channel adapters for the Huffman stream format of HuffmanOutputStream. The codec
+ * works on heap arrays, so every byte is copied once between the heap and a direct
+ * ByteBuffer on its way to or from the underlying channel. The adapters make that copy
+ * themselves, in TRANSFER_SIZE chunks into one buffer they keep, instead of leaving it
+ * to the JDK's temporary direct buffers on every channel call.
+ * The underlying channels must be in blocking mode.
+ */
+public class HuffmanChannels {
+    private static final int TRANSFER_SIZE = 1 << 16;
+
+    /**
+     * Returns a channel that Huffman codes the bytes written to it into channel.
+     * Closing it writes the end frame and closes channel.
+     *
+     * @param channel Where the coded frames are written
+     * @param blockSize Number of bytes per block, see HuffmanOutputStream
+     */
+    public static WritableByteChannel newEncodingChannel(WritableByteChannel channel, int blockSize) throws IOException {
+        return new EncodingChannel(new HuffmanOutputStream(new ChannelOutput(channel), blockSize));
+    }
+
+    /**
+     * Returns a channel that decodes the Huffman stream read from channel.
+     * Closing it closes channel.
+     *
+     * @param channel The coded frames, starting with the stream's magic number
+     */
+    public static ReadableByteChannel newDecodingChannel(ReadableByteChannel channel) throws IOException {
+        return new DecodingChannel(new HuffmanInputStream(new ChannelInput(channel)));
+    }
+
+    private static class EncodingChannel implements WritableByteChannel {
+        private final HuffmanOutputStream out;
+        private boolean open = true;
+
+        EncodingChannel(HuffmanOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            int n = src.remaining();
+            out.write(src);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!open) return;
+            open = false;
+            out.close();
+        }
+    }
+
+    private static class DecodingChannel implements ReadableByteChannel {
+        private final HuffmanInputStream in;
+        private boolean open = true;
+
+        DecodingChannel(HuffmanInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            return in.read(dst);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!open) return;
+            open = false;
+            in.close();
+        }
+    }
+
+    /*
+     * Writes to a channel through a direct buffer
+     */
+    private static class ChannelOutput extends OutputStream {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(TRANSFER_SIZE);
+
+        ChannelOutput(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) drain();
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) drain();
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            }
+            finally {
+                channel.close();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    /*
+     * Reads from a channel through a direct buffer
+     */
+    private static class ChannelInput extends InputStream {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(TRANSFER_SIZE);
+
+        ChannelInput(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip(); // starts empty
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining() && !fill()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private boolean fill() throws IOException {
+            buffer.clear();
+            int n;
+            do {
+                n = channel.read(buffer);
+            } while (n == 0);
+            buffer.flip();
+            return n > 0;
+        }
+    }
+}
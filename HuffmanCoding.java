@@ -1,8 +1,13 @@
 package huffman;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 
@@ -13,10 +18,16 @@ import java.util.Collections;
  * completed by Noor Mashal (@author Ishaan Ivaturi & @author Maxwell Goldberg)
  */
 public class HuffmanCoding {
+    private static final int ALPHABET = 256;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CANONICAL_MAGIC = 0x48554631; // "HUF1"
+
     private String fileName;
+    private long[] charCounts;
     private ArrayList<CharFreq> sortedCharFreqList;
     private TreeNode huffmanRoot;
     private String[] encodings;
+    private int maxCodeLength = 15;
 
     /**
      * Constructor used by the driver, sets filename
@@ -28,21 +39,46 @@ public class HuffmanCoding {
     }
 
     /**
-     * Reads from filename character by character, and sets sortedCharFreqList
-     * to a new ArrayList of CharFreq objects with frequency > 0, sorted by frequency
+     * Sets the length of the longest code makeTree() may produce, so encoded files can
+     * always be decoded with small lookup tables. The default is 15 bits.
+     * @param maxCodeLength Maximum code length in bits, 8 (enough for 256 characters) to 64
+     */
+    public void setMaxCodeLength(int maxCodeLength) {
+        if (maxCodeLength < 8 || maxCodeLength > 64) {
+            throw new IllegalArgumentException("Maximum code length must be 8..64: " + maxCodeLength);
+        }
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    public int getMaxCodeLength() {
+        return maxCodeLength;
+    }
+
+    /**
+     * Reads from filename byte by byte, and sets sortedCharFreqList to a new ArrayList
+     * of CharFreq objects with frequency > 0, sorted by frequency. Every byte value
+     * 0-255 is a character, so any file can be encoded.
+     * The exact character counts are kept for encode().
      */
     public void makeSortedList() {
-        StdIn.setFile(fileName);
         ArrayList<CharFreq> list = new ArrayList<CharFreq>();
-        int count = 0;
-        int[] b = new int[128];
-        while (StdIn.hasNextChar())
+        long count = 0;
+        long[] b = new long[ALPHABET];
+        try (InputStream in = new FileInputStream(fileName))
         {
-            char newChar = StdIn.readChar();
-            b[(int)newChar]+=1;
-            count++;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+            {
+                for (int i = 0; i < n; i++) b[buffer[i] & 0xFF]++;
+                count += n;
+            }
         }
-        for(int i = 0; i < 128; i++)
+        catch (IOException e)
+        {
+            System.out.println("Error while reading file!");
+        }
+        charCounts = b;
+        for(int i = 0; i < ALPHABET; i++)
         {
             if(b[i] > 0)
             {
@@ -53,7 +89,7 @@ public class HuffmanCoding {
         }
         if (list.size() == 1)
         {   
-            if ((int)list.get(0).getCharacter() == 127)
+            if ((int)list.get(0).getCharacter() == ALPHABET - 1)
             {
                 list.add(new CharFreq((char)0, 0));
             }
@@ -70,7 +106,8 @@ public class HuffmanCoding {
 
     /**
      * Uses sortedCharFreqList to build a huffman coding tree, and stores its root
-     * in huffmanRoot
+     * in huffmanRoot. If the tree is deeper than the maximum code length, it is
+     * replaced by the canonical tree of optimal length-limited code lengths.
      */
     public void makeTree() {
         Queue<TreeNode> source = new Queue<TreeNode>();
@@ -117,19 +154,95 @@ public class HuffmanCoding {
                 target.enqueue(new TreeNode(c,left,right));
         }
         huffmanRoot = target.peek();
-
+        if (depth(huffmanRoot) > maxCodeLength) huffmanRoot = limitedTree();
 
     /*  Your code goes here */
     }
+
+    /**
+     * Computes each character's code length from the exact counts of makeSortedList(),
+     * using integer weights in flat arrays instead of CharFreq probabilities and
+     * TreeNode objects, so the lengths are the same on every platform. Codes are limited
+     * to the maximum code length.
+     * @return int array of size 256 holding each character's code length, 0 if absent
+     */
+    public int[] makeCodeLengths()
+    {
+        int[] lengths = new int[ALPHABET];
+        new CodeLengths(ALPHABET).compute(charCounts, maxCodeLength, lengths);
+        return lengths;
+    }
+
     /**
-     * Uses huffmanRoot to create a string array of size 128, where each
-     * index in the array contains that ASCII character's bitstring encoding. Characters not
+     * Sets encodings to the canonical code with the lengths of makeCodeLengths(), an
+     * integer-only alternative to makeTree() followed by makeEncodings(). huffmanRoot
+     * is not built.
+     */
+    public void makeCanonicalEncodings()
+    {
+        encodings = new CanonicalCode(makeCodeLengths()).toEncodings();
+    }
+
+    private static int depth(TreeNode node)
+    {
+        if (node == null || (node.getLeft() == null && node.getRight() == null)) return 0;
+        return 1 + Math.max(depth(node.getLeft()), depth(node.getRight()));
+    }
+
+    /*
+     * Builds the tree of the canonical code whose lengths come from package-merge over
+     * the character counts, reusing the CharFreq objects of sortedCharFreqList as leaves
+     */
+    private TreeNode limitedTree()
+    {
+        int[] symbols = new int[sortedCharFreqList.size()];
+        CharFreq[] leaves = new CharFreq[ALPHABET];
+        for (int i = 0; i < symbols.length; i++)
+        {
+            CharFreq leaf = sortedCharFreqList.get(i);
+            symbols[i] = leaf.getCharacter();
+            leaves[symbols[i]] = leaf;
+        }
+        CanonicalCode code = new CanonicalCode(CodeLengths.packageMerge(charCounts, symbols, maxCodeLength));
+        String[] codes = code.toEncodings();
+
+        TreeNode root = new TreeNode(new CharFreq(null, 0), null, null);
+        for (int symbol : symbols)
+        {
+            TreeNode node = root;
+            for (int i = 0; i < codes[symbol].length(); i++)
+            {
+                boolean right = codes[symbol].charAt(i) == '1';
+                TreeNode child = right ? node.getRight() : node.getLeft();
+                if (child == null)
+                {
+                    child = new TreeNode(i == codes[symbol].length() - 1 ? leaves[symbol] : new CharFreq(null, 0), null, null);
+                    if (right) node.setRight(child);
+                    else node.setLeft(child);
+                }
+                node = child;
+            }
+        }
+        sumProbabilities(root);
+        return root;
+    }
+
+    private static double sumProbabilities(TreeNode node)
+    {
+        if (node.getData().getCharacter() != null) return node.getData().getProbOcc();
+        double sum = sumProbabilities(node.getLeft()) + sumProbabilities(node.getRight());
+        node.getData().setProbOcc(sum);
+        return sum;
+    }
+    /**
+     * Uses huffmanRoot to create a string array of size 256, where each
+     * index in the array contains that character's bitstring encoding. Characters not
      * present in the huffman coding tree should have their spots in the array left null.
      * Set encodings to this array.
      */
     public void makeEncodings() 
     {
-        String[] encoding = new String[128];
+        String[] encoding = new String[ALPHABET];
         encodings = look(huffmanRoot, "", encoding);
         encodings = encoding;
 
@@ -154,23 +267,116 @@ public class HuffmanCoding {
         }
     }
     /**
-     * Using encodings and filename, this method makes use of the writeBitString method
-     * to write the final encoding of 1's and 0's to the encoded file.
+     * Using encodings and filename, this method writes the final encoding of 1's and 0's
+     * to the encoded file, in the same format as writeBitString but streamed bit by bit
+     * instead of building the whole bit string in memory.
      * 
      * @param encodedFile The file name into which the text file is to be encoded
      */
     public void encode(String encodedFile) 
     {
-        StdIn.setFile(fileName);
-        String compress = "";
-        while(StdIn.hasNextChar() == true)
+        try (InputStream in = new FileInputStream(fileName);
+             OutputStream out = new FileOutputStream(encodedFile))
         {
-            int a = StdIn.readChar();
-            compress += encodings[a];
+            encode(in, out);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error when writing to file!");
         }
-        writeBitString(encodedFile, compress);
+    }
 
-	/* Your code goes here */ // DONE
+    /**
+     * Encodes a stream in one pass with constant memory. The output starts with the
+     * writeBitString padding (zeroes then a 1), so the stream must hold exactly the
+     * characters counted by makeSortedList(), whose counts give the length up front.
+     * Neither stream needs to be buffered, and neither is closed.
+     * 
+     * @param in The characters to encode
+     * @param out Where the encoded bits are written
+     * @deprecated The output can only be decoded with this object's encodings. Use
+     *             encodeCanonical(InputStream, OutputStream), whose output carries its code.
+     */
+    @Deprecated
+    public void encode(InputStream in, OutputStream out) throws IOException
+    {
+        long[] codes = new long[ALPHABET];
+        int[] lengths = new int[ALPHABET];
+        long totalBits = 0;
+        for (int i = 0; i < ALPHABET; i++)
+        {
+            if (encodings[i] == null) continue;
+            // only possible with a maximum code length of 64 and terabytes of input
+            if (encodings[i].length() > 64) throw new IllegalStateException("Encoding longer than 64 bits");
+            lengths[i] = encodings[i].length();
+            codes[i] = Long.parseUnsignedLong(encodings[i], 2);
+            totalBits += charCounts[i] * lengths[i];
+        }
+
+        BitWriter writer = new BitWriter(out);
+        writer.writeBits(1, 8 - (int) (totalBits % 8)); // padding-1 zeroes then a 1
+        writeCodes(in, writer, codes, lengths);
+        writer.finish();
+    }
+
+    /**
+     * Encodes the text file with the canonical code of the same lengths as encodings,
+     * behind a header holding the code lengths, so decodeCanonical() can decode the
+     * file without this object.
+     * 
+     * @param encodedFile The file name into which the text file is to be encoded
+     */
+    public void encodeCanonical(String encodedFile)
+    {
+        try (InputStream in = new FileInputStream(fileName);
+             OutputStream out = new FileOutputStream(encodedFile))
+        {
+            encodeCanonical(in, out);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error when writing to file!");
+        }
+    }
+
+    /**
+     * Encodes a stream with a canonical code. The output is the magic number "HUF1", the
+     * number of characters as a long, the CanonicalCode length table, then the codes,
+     * zero-padded to a whole byte. The stream must hold exactly the characters counted
+     * by makeSortedList(). Neither stream needs to be buffered, and neither is closed.
+     * 
+     * @param in The characters to encode
+     * @param out Where the header and encoded bits are written
+     */
+    public void encodeCanonical(InputStream in, OutputStream out) throws IOException
+    {
+        CanonicalCode code = CanonicalCode.fromEncodings(encodings);
+        long count = 0;
+        for (long c : charCounts) count += c;
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(CANONICAL_MAGIC);
+        header.writeLong(count);
+        code.writeTo(header);
+        header.flush();
+
+        BitWriter writer = new BitWriter(out);
+        writeCodes(in, writer, code.getCodes(), code.getLengths());
+        writer.finish();
+    }
+
+    private static void writeCodes(InputStream in, BitWriter writer, long[] codes, int[] lengths) throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+        {
+            for (int i = 0; i < n; i++)
+            {
+                int a = buffer[i] & 0xFF;
+                if (a >= lengths.length || lengths[a] == 0) throw new IOException("No encoding for character " + a);
+                writer.writeBits(codes[a], lengths[a]);
+            }
+        }
     }
     
     /**
@@ -225,39 +431,113 @@ public class HuffmanCoding {
     }
 
     /**
-     * Using a given encoded file name, this method makes use of the readBitString method 
-     * to convert the file into a bit string, then decodes the bit string using the 
-     * tree, and writes it to a decoded file. 
+     * Using a given encoded file name, this method decodes the bits written by encode()
+     * (or writeBitString) with a lookup table of the encodings, and writes the characters
+     * to a decoded file. The file has no header, so it can only be decoded with the
+     * encodings it was written with; files written by encodeCanonical() can be decoded
+     * anywhere with decodeCanonical().
      * 
      * @param encodedFile The file which has already been encoded by encode()
      * @param decodedFile The name of the new file we want to decode into
      */
     public void decode(String encodedFile, String decodedFile) 
     {
-        StdOut.setFile(decodedFile); // creates the file
-        String input = readBitString(encodedFile); // translates the encoding to string
-        decodedFile = ""; // makes an empty space in the file
-        while(input.length() != 0)
+        try (InputStream in = new FileInputStream(encodedFile);
+             OutputStream out = new FileOutputStream(decodedFile))
         {
-            TreeNode walker = huffmanRoot; //walks thru the tree
-            int chara = 0; // TELLS YOU WHICH CHARACTER TO LOOK AT AND TO HELP TRAVERSE THRU STRING | AND ALSO STARTS AT 0 TO LOOK AT STRING FROM BEGINNING EVERY ITTERATION 
-            while(walker.getData().getCharacter() == null)
-            {
-            if (input.substring(chara,chara+1).equals("1"))
+            decode(in, out);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error while reading file!");
+        }
+    }
+
+    /**
+     * Decodes a stream written by encode() using encodings, reading it as bytes and
+     * resolving several bits per table lookup. Neither stream needs to be buffered,
+     * and neither is closed.
+     * 
+     * @param in The encoded bits, starting with the writeBitString padding
+     * @param out Where the decoded characters are written
+     * @throws IOException if the encoded data is not valid for encodings
+     * @deprecated Only decodes data written with this object's encodings. Use
+     *             decodeCanonical(InputStream, OutputStream), which reads the code from the header.
+     */
+    @Deprecated
+    public void decode(InputStream in, OutputStream out) throws IOException
+    {
+        DecodeTable table = new DecodeTable(encodings);
+        BitReader reader = new BitReader(in);
+
+        // Skip the padding: zeroes up to and including the first 1
+        for (int i = 0; i < 8 && reader.hasBits() && reader.readBit() == 0; i++);
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n = 0;
+        while (reader.hasBits())
+        {
+            buffer[n++] = (byte) table.read(reader);
+            if (n == BUFFER_SIZE)
             {
-                walker = walker.getRight();
+                out.write(buffer, 0, n);
+                n = 0;
             }
-            else 
+        }
+        out.write(buffer, 0, n);
+        out.flush();
+    }
+
+    /**
+     * Decodes a file written by encodeCanonical(), rebuilding the code from the file's
+     * header, so no HuffmanCoding object or tree is needed
+     * 
+     * @param encodedFile The file which has already been encoded by encodeCanonical()
+     * @param decodedFile The name of the new file we want to decode into
+     */
+    public static void decodeCanonical(String encodedFile, String decodedFile)
+    {
+        try (InputStream in = new FileInputStream(encodedFile);
+             OutputStream out = new FileOutputStream(decodedFile))
+        {
+            decodeCanonical(in, out);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error while reading file!");
+        }
+    }
+
+    /**
+     * Decodes a stream written by encodeCanonical(). Neither stream needs to be
+     * buffered, and neither is closed.
+     * 
+     * @param in The header and encoded bits
+     * @param out Where the decoded characters are written
+     * @throws IOException if the header or the encoded data is not valid
+     */
+    public static void decodeCanonical(InputStream in, OutputStream out) throws IOException
+    {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != CANONICAL_MAGIC) throw new IOException("Not a canonical Huffman file");
+        long count = header.readLong();
+        if (count < 0) throw new IOException("Invalid character count " + count);
+        DecodeTable table = CanonicalCode.readFrom(header).newDecodeTable();
+
+        BitReader reader = new BitReader(in);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n = 0;
+        for (long i = 0; i < count; i++)
+        {
+            buffer[n++] = (byte) table.read(reader);
+            if (n == BUFFER_SIZE)
             {
-                walker = walker.getLeft();
+                out.write(buffer, 0, n);
+                n = 0;
             }
-            chara++;
-        }
-            decodedFile += walker.getData().getCharacter(); // adds the character to the file
-            input = input.substring(chara); //gets rid of the traveresed string/characters in the string to start with a new smaller string
         }
-        StdOut.print(decodedFile);
-	/* Your code goes here */ // DONE
+        out.write(buffer, 0, n);
+        out.flush();
     }
 
     /**
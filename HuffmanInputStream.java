@@ -0,0 +1,170 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * An input stream that decodes what a HuffmanOutputStream wrote, one frame at a time,
+ * so only one block is held in memory. A frame's lengths are only used once their own
+ * checksum matches, and its block is only decoded once the block's checksum matches.
+ * A corrupt frame either fails the read or, with setSkipCorrupt(), is left out of the
+ * output without being decoded.
+ */
+public class HuffmanInputStream extends InputStream {
+    private final InputStream in;
+    private final byte[] header = new byte[HuffmanOutputStream.FRAME_HEADER_BYTES];
+    private final CRC32C crc = new CRC32C();
+    private byte[] encoded = new byte[0];
+    private byte[] block = new byte[0];
+    private int position;       // next byte of block to return
+    private int limit;          // number of decoded bytes in block
+    private boolean ended;
+    private boolean skipCorrupt;
+    private long frames;        // number of frames read, for error messages
+    private long corruptFrames;
+
+    /**
+     * @param in The stream of coded frames, starting with the magic number
+     * @throws IOException if in does not start with a HuffmanOutputStream header
+     */
+    public HuffmanInputStream(InputStream in) throws IOException {
+        this.in = in;
+        readFully(header, 4);
+        if (getInt(header, 0) != HuffmanOutputStream.MAGIC) throw new IOException("Not a Huffman stream");
+    }
+
+    /**
+     * Sets whether corrupt frames are skipped instead of failing the read with an
+     * IOException. A frame whose block is corrupt is skipped using its lengths. A frame
+     * whose lengths are corrupt gives no way to find the next frame, so the stream is
+     * scanned a byte at a time for the next header whose checksum matches; everything
+     * up to it counts as one corrupt frame. Skipped frames are counted by
+     * getCorruptFrames(). The default is false.
+     */
+    public void setSkipCorrupt(boolean skipCorrupt) {
+        this.skipCorrupt = skipCorrupt;
+    }
+
+    /**
+     * Returns the number of corrupt frames skipped so far
+     */
+    public long getCorruptFrames() {
+        return corruptFrames;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !nextFrame()) return -1;
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position == limit && !nextFrame()) return -1;
+        int n = Math.min(len, limit - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /*
+     * Reads decoded bytes into dst, used by the channel adapter
+     * @return the number of bytes read, or -1 at the end of the stream
+     */
+    int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) return 0;
+        if (position == limit && !nextFrame()) return -1;
+        int n = Math.min(dst.remaining(), limit - position);
+        dst.put(block, position, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /*
+     * Decodes the next frame into block
+     * @return false at the end frame
+     */
+    private boolean nextFrame() throws IOException {
+        while (!ended) {
+            readFully(header, HuffmanOutputStream.FRAME_HEADER_BYTES);
+            long frame = frames++;
+            if (!validHeader()) {
+                if (!skipCorrupt) throw new IOException("Invalid header in frame " + frame);
+                corruptFrames++;
+                resync();
+            }
+            int originalLength = getInt(header, 0);
+            int encodedLength = getInt(header, 4);
+            if (originalLength == 0 && encodedLength == 0) {
+                ended = true;
+                break;
+            }
+            if (encoded.length < encodedLength) encoded = new byte[encodedLength];
+            readFully(encoded, encodedLength);
+            if (HuffmanOutputStream.checksum(crc, encoded, encodedLength) != getInt(header, 12)) {
+                if (!skipCorrupt) throw new IOException("Checksum mismatch in frame " + frame);
+                corruptFrames++;
+                continue;
+            }
+            if (block.length < originalLength) block = new byte[originalLength];
+            BlockCodec.decodeBlock(encoded, 0, encodedLength, block, 0, originalLength);
+            position = 0;
+            limit = originalLength;
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Returns true if the lengths in header match their checksum and are in range
+     */
+    private boolean validHeader() {
+        if (HuffmanOutputStream.checksum(crc, header, 8) != getInt(header, 8)) return false;
+        int originalLength = getInt(header, 0);
+        int encodedLength = getInt(header, 4);
+        if (originalLength == 0 && encodedLength == 0) return getInt(header, 12) == 0; // CRC32C of nothing
+        // BlockCodec stores blocks that do not shrink, so a block never grows by more than its mode byte
+        return originalLength > 0 && originalLength <= HuffmanOutputStream.MAX_BLOCK_SIZE
+            && encodedLength > 0 && encodedLength <= originalLength + 1;
+    }
+
+    /*
+     * Slides header along the stream one byte at a time until it holds a valid header
+     */
+    private void resync() throws IOException {
+        int last = HuffmanOutputStream.FRAME_HEADER_BYTES - 1;
+        do {
+            System.arraycopy(header, 1, header, 0, last);
+            int b = in.read();
+            if (b < 0) throw new EOFException("Unexpected end of Huffman stream");
+            header[last] = (byte) b;
+        } while (!validHeader());
+    }
+
+    private void readFully(byte[] bytes, int length) throws IOException {
+        for (int off = 0; off < length; ) {
+            int n = in.read(bytes, off, length - off);
+            if (n < 0) throw new EOFException("Unexpected end of Huffman stream");
+            off += n;
+        }
+    }
+
+    static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+             | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,102 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the frame checks of HuffmanInputStream: a stream of five 10000 byte frames
+ * is damaged one bit at a time and read back in strict and in skipping mode.
+ *
+ * Requires junit-jupiter on the classpath.
+ */
+public class HuffmanInputStreamTest {
+    private static final int BLOCK_SIZE = 10000;
+    private static final int FRAMES = 5;
+
+    private final byte[] data = new byte[FRAMES * BLOCK_SIZE];
+    private final byte[] encoded;
+    private final int[] frameStarts = new int[FRAMES + 1];
+
+    public HuffmanInputStreamTest() throws IOException {
+        Random random = new Random(5);
+        for (int i = 0; i < data.length; i++) data[i] = (byte) "abcdefgh".charAt(random.nextInt(8));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HuffmanOutputStream out = new HuffmanOutputStream(bytes, BLOCK_SIZE, true)) {
+            out.write(data);
+        }
+        encoded = bytes.toByteArray();
+        int position = 4;
+        for (int f = 0; f <= FRAMES; f++) {
+            frameStarts[f] = position;
+            position += HuffmanOutputStream.FRAME_HEADER_BYTES + HuffmanInputStream.getInt(encoded, position + 4);
+        }
+    }
+
+    @Test
+    public void readsUndamagedStream() throws IOException {
+        HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(encoded));
+        assertArrayEquals(data, in.readAllBytes());
+        assertEquals(0, in.getCorruptFrames());
+    }
+
+    @Test
+    public void skipsFrameWithFlippedLengthBit() throws IOException {
+        for (int f = 0; f < FRAMES; f++) {
+            // the original and encoded lengths are the first 8 bytes of the header
+            for (int position = frameStarts[f]; position < frameStarts[f] + 8; position++) {
+                for (int bit = 0; bit < 8; bit++) {
+                    byte[] damaged = encoded.clone();
+                    damaged[position] ^= 1 << bit;
+                    HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(damaged));
+                    in.setSkipCorrupt(true);
+                    byte[] read = in.readAllBytes();
+                    assertEquals(1, in.getCorruptFrames(), "corrupt frames, byte " + position + " bit " + bit);
+                    assertArrayEquals(withoutFrame(f), read, "data, byte " + position + " bit " + bit);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsFlippedLengthBitInStrictMode() throws IOException {
+        for (int f = 0; f < FRAMES; f++) {
+            byte[] damaged = encoded.clone();
+            damaged[frameStarts[f] + 2] ^= 0x10;
+            HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(damaged));
+            IOException e = assertThrows(IOException.class, in::readAllBytes);
+            assertTrue(e.getMessage().startsWith("Invalid header in frame " + f), e.getMessage());
+        }
+    }
+
+    @Test
+    public void skipsExactlyOneFrameForAnyFlippedByte() throws IOException {
+        for (int position = 4; position < frameStarts[FRAMES]; position++) {
+            byte[] damaged = encoded.clone();
+            damaged[position] ^= 0x20;
+            HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(damaged));
+            in.setSkipCorrupt(true);
+            byte[] read = in.readAllBytes();
+            assertEquals(1, in.getCorruptFrames(), "corrupt frames, byte " + position);
+            assertEquals(data.length - BLOCK_SIZE, read.length, "length, byte " + position);
+        }
+    }
+
+    /*
+     * The data without the block of frame f
+     */
+    private byte[] withoutFrame(int f) {
+        byte[] rest = new byte[data.length - BLOCK_SIZE];
+        System.arraycopy(data, 0, rest, 0, f * BLOCK_SIZE);
+        System.arraycopy(data, (f + 1) * BLOCK_SIZE, rest, f * BLOCK_SIZE, rest.length - f * BLOCK_SIZE);
+        return rest;
+    }
+}
@@ -0,0 +1,169 @@
+package huffman;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * An output stream that Huffman codes the bytes written to it. Bytes are collected into
+ * blocks and every block is written as a frame holding a BlockCodec block, so memory
+ * use is bounded by the block size and the output can be decoded as it arrives by a
+ * HuffmanInputStream.
+ *
+ * Stream format, numbers big-endian:
+ * - magic "HUFC"
+ * - frames: original length (int), encoded length (int), CRC32C (int) of the two lengths,
+ *   CRC32C (int) of the encoded block, then the encoded block
+ * - an end frame with both lengths 0 and no block
+ * The lengths have their own checksum so a reader can trust them, and find the next
+ * frame, before it has read the block.
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+    static final int MAGIC = 0x48554643; // "HUFC"
+    static final int FRAME_HEADER_BYTES = 16;
+    static final int MAX_BLOCK_SIZE = 1 << 26;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final byte[] block;
+    private final boolean order1;
+    private final byte[] header = new byte[FRAME_HEADER_BYTES];
+    private final CRC32C crc = new CRC32C();
+    private int size;           // number of bytes waiting in block
+    private boolean finished;
+
+    /**
+     * Codes blocks of BlockHuffman.DEFAULT_BLOCK_SIZE bytes
+     *
+     * @param out The stream the coded frames are written to
+     */
+    public HuffmanOutputStream(OutputStream out) throws IOException {
+        this(out, BlockHuffman.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out The stream the coded frames are written to
+     * @param blockSize Number of bytes per block, at most 64 MB
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize) throws IOException {
+        this(out, blockSize, false);
+    }
+
+    /**
+     * @param out The stream the coded frames are written to
+     * @param blockSize Number of bytes per block, at most 64 MB
+     * @param order1 true to let blocks use one code per preceding byte when that is smaller
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize, boolean order1) throws IOException {
+        super(out);
+        this.order1 = order1;
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be 1.." + MAX_BLOCK_SIZE + ": " + blockSize);
+        }
+        block = new byte[blockSize];
+        putInt(header, 0, MAGIC);
+        out.write(header, 0, 4);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[size++] = (byte) b;
+        if (size == block.length) writeFrame();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, block.length - size);
+            System.arraycopy(b, off, block, size, n);
+            size += n;
+            off += n;
+            len -= n;
+            if (size == block.length) writeFrame();
+        }
+    }
+
+    /*
+     * Writes the remaining bytes of src, used by the channel adapter
+     */
+    void write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), block.length - size);
+            src.get(block, size, n);
+            size += n;
+            if (size == block.length) writeFrame();
+        }
+    }
+
+    /**
+     * Codes the bytes written so far as a (possibly short) frame and flushes the
+     * underlying stream, so a reader can decode everything written up to here
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (size > 0) writeFrame();
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining bytes and the end frame without closing the underlying stream
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        if (size > 0) writeFrame();
+        writeHeader(0, EMPTY);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        byte[] encoded = BlockCodec.encodeBlock(block, 0, size, order1);
+        writeHeader(size, encoded);
+        out.write(encoded);
+        size = 0;
+    }
+
+    private void writeHeader(int originalLength, byte[] encoded) throws IOException {
+        putInt(header, 0, originalLength);
+        putInt(header, 4, encoded.length);
+        putInt(header, 8, checksum(crc, header, 8));
+        putInt(header, 12, checksum(crc, encoded, encoded.length));
+        out.write(header, 0, FRAME_HEADER_BYTES);
+    }
+
+    /*
+     * CRC32C of bytes[0..length)
+     */
+    static int checksum(CRC32C crc, byte[] bytes, int length) {
+        crc.reset();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) throw new IOException("Stream finished");
+    }
+
+    static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
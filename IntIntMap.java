@@ -0,0 +1,153 @@
+package warehouse;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from int keys to int values that stores both in flat arrays, so lookups
+ * and updates do not box or allocate. Uses open addressing with linear probing and
+ * keeps the table at most half full; removals shift later entries back instead of
+ * leaving tombstones.
+ */
+public class IntIntMap {
+    private static final int FREE = 0; // marks an empty slot, key 0 is kept in its own fields
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;           // number of keys, including key 0
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public IntIntMap() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize Number of keys the map holds without growing
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the value of key, or defaultValue if the map does not contain key
+     */
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == FREE) return hasZeroKey ? zeroValue : defaultValue;
+        for (int slot = mix(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return values[slot];
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE) return hasZeroKey;
+        for (int slot = mix(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Maps key to value, replacing any value it had
+     */
+    public void put(int key, int value) {
+        if (key == FREE) {
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int slot = mix(key) & mask;
+        for (; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length / 2) resize(keys.length * 2);
+    }
+
+    /**
+     * Maps key to value unless the map already contains key
+     * @return true if key was added
+     */
+    public boolean putIfAbsent(int key, int value) {
+        if (containsKey(key)) return false;
+        put(key, value);
+        return true;
+    }
+
+    /**
+     * Removes key from the map
+     * @return true if the map contained key
+     */
+    public boolean remove(int key) {
+        if (key == FREE) {
+            if (!hasZeroKey) return false;
+            hasZeroKey = false;
+            size--;
+            return true;
+        }
+        int slot = mix(key) & mask;
+        for (; keys[slot] != key; slot = (slot + 1) & mask) {
+            if (keys[slot] == FREE) return false;
+        }
+        // move back any later key of the run that would no longer be found past the gap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /**
+     * Spreads the bits of x over the whole int (the MurmurHash3 finalizer), so keys
+     * that differ only in their high bits or form a sequence still land far apart
+     */
+    static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int slot = mix(oldKeys[i]) & mask;
+            while (keys[slot] != FREE) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package conwaygame;
+
+/**
+ * A Life-like rule given in B/S notation, for example "B3/S23" for Conway's Game of Life:
+ * a DEAD cell with a neighbor count listed after B becomes ALIVE, an ALIVE cell with a
+ * neighbor count listed after S survives, and every other cell is DEAD next generation.
+ *
+ * The rule is compiled into a transition table indexed by the 9-cell neighborhood, and
+ * into per-count masks for the bit-sliced neighbor counts used by BitBoard, so neither
+ * engine branches on the rule in its inner loop.
+ */
+public class LifeRule
+{
+
+    public static final LifeRule CONWAY = parse("B3/S23");
+    public static final LifeRule HIGHLIFE = parse("B36/S23");
+    public static final LifeRule DAY_AND_NIGHT = parse("B3678/S34678");
+    public static final LifeRule SEEDS = parse("B2/S");
+
+    /**
+     * Bit (column * 3 + row) of a neighborhood index holds the cell at
+     * (row - 1, column - 1) relative to the cell being computed, so CENTER is the cell itself
+     */
+    public static final int CENTER = 1 << 4;
+
+    private final int birth;        // bit k set if a DEAD cell with k neighbors becomes ALIVE
+    private final int survival;     // bit k set if an ALIVE cell with k neighbors stays ALIVE
+    private final boolean[] table;  // next state for each of the 512 neighborhoods
+    private final int[] counts;     // neighbor counts that appear in birth or survival
+    private final long[] whenDead;  // for counts[i]: -1 if a DEAD cell becomes ALIVE, else 0
+    private final long[] whenAlive; // for counts[i]: -1 if an ALIVE cell stays ALIVE, else 0
+    private final boolean conway;   // B3/S23, evaluated with a dedicated expression
+
+    private LifeRule (int birth, int survival) {
+        this.birth = birth;
+        this.survival = survival;
+        conway = birth == 1 << 3 && survival == ((1 << 2) | (1 << 3));
+
+        table = new boolean[512];
+        for (int neighborhood = 0; neighborhood < 512; neighborhood++) {
+            int neighbors = Integer.bitCount(neighborhood & ~CENTER);
+            boolean alive = (neighborhood & CENTER) != 0;
+            table[neighborhood] = ((alive ? survival : birth) & (1 << neighbors)) != 0;
+        }
+
+        int used = Integer.bitCount(birth | survival);
+        counts = new int[used];
+        whenDead = new long[used];
+        whenAlive = new long[used];
+        int i = 0;
+        for (int k = 0; k <= 8; k++) {
+            if (((birth | survival) & (1 << k)) != 0) {
+                counts[i] = k;
+                whenDead[i] = (birth & (1 << k)) != 0 ? -1L : 0L;
+                whenAlive[i] = (survival & (1 << k)) != 0 ? -1L : 0L;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Parses a rule in B/S notation ("B36/S23"), also accepting the older S/B
+     * notation without letters ("23/36")
+     * @param notation the rule to parse
+     * @return the compiled rule
+     */
+    public static LifeRule parse (String notation) {
+        String[] parts = notation.trim().split("/", -1);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Rule must look like B3/S23: " + notation);
+        }
+        String first = parts[0].trim().toUpperCase();
+        String second = parts[1].trim().toUpperCase();
+        if (first.startsWith("B") && second.startsWith("S")) {
+            return new LifeRule(parseCounts(first.substring(1), notation), parseCounts(second.substring(1), notation));
+        }
+        if (first.startsWith("S") && second.startsWith("B")) {
+            return new LifeRule(parseCounts(second.substring(1), notation), parseCounts(first.substring(1), notation));
+        }
+        return new LifeRule(parseCounts(second, notation), parseCounts(first, notation));
+    }
+
+    private static int parseCounts (String digits, String notation) {
+        int mask = 0;
+        for (char c : digits.toCharArray()) {
+            if (c < '0' || c > '8') {
+                throw new IllegalArgumentException("Neighbor counts must be digits 0-8: " + notation);
+            }
+            mask |= 1 << (c - '0');
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the next state of a cell
+     * @param neighborhood index of the 3x3 neighborhood, see CENTER
+     * @return true if the cell is ALIVE next generation
+     */
+    public boolean next (int neighborhood) {
+        return table[neighborhood];
+    }
+
+    /**
+     * Returns the next state of 64 cells at once from their bit-sliced neighbor counts,
+     * count = ones + 2 * twos + 4 * fours + 8 * eights
+     * @param alive the current state of the cells
+     * @return the next state of the cells
+     */
+    public long next (long ones, long twos, long fours, long eights, long alive) {
+        if (conway) {
+            // exactly 3 neighbors, or exactly 2 neighbors and alive now
+            return twos & ~fours & ~eights & (ones | alive);
+        }
+        long result = 0;
+        for (int i = 0; i < counts.length; i++) {
+            int k = counts[i];
+            long match = ((k & 1) != 0 ? ones : ~ones) & ((k & 2) != 0 ? twos : ~twos)
+                       & ((k & 4) != 0 ? fours : ~fours) & ((k & 8) != 0 ? eights : ~eights);
+            result |= match & ((alive & whenAlive[i]) | (~alive & whenDead[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals (Object other) {
+        return other instanceof LifeRule && ((LifeRule) other).birth == birth && ((LifeRule) other).survival == survival;
+    }
+
+    @Override
+    public int hashCode () {
+        return birth * 512 + survival;
+    }
+
+    /*
+     * Returns the rule in B/S notation
+     */
+    @Override
+    public String toString () {
+        StringBuilder notation = new StringBuilder("B");
+        for (int k = 0; k <= 8; k++) {
+            if ((birth & (1 << k)) != 0) notation.append(k);
+        }
+        notation.append("/S");
+        for (int k = 0; k <= 8; k++) {
+            if ((survival & (1 << k)) != 0) notation.append(k);
+        }
+        return notation.toString();
+    }
+
+}
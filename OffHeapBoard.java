@@ -0,0 +1,468 @@
+package conwaygame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Bit-packed Game of Life board stored outside of the Java heap. The cells are kept in
+ * tiles of 64x64 cells (64 words of 64 cells, 512 bytes), and the tiles of a generation
+ * live in direct or memory-mapped buffers of at most SEGMENT_BYTES each, so the garbage
+ * collector only ever sees a handful of objects.
+ *
+ * Direct buffers count against -XX:MaxDirectMemorySize, which defaults to about -Xmx,
+ * so a board built in direct memory needs that limit set large enough for its two
+ * generations, not a larger heap. Only the memory-mapped constructor escapes both
+ * limits, for boards larger than the heap or physical memory.
+ *
+ * Generations are computed with the same full-adder kernel as BitBoard, one tile at a
+ * time so the nine words around each word are close together in memory, with the rows
+ * of tiles spread over the common ForkJoinPool. Like BitBoard, two buffers ping-pong
+ * between generations, the edges wrap around unless setToroidal(false) is called, and
+ * any LifeRule can be used.
+ *
+ * Boards are moved in and out a word (64 cells) at a time: setGrid/getGrid for the
+ * GameOfLife grid, copyFrom/toBitBoard for BitBoards, and BoardLoader's snapshot
+ * methods for files, which stream one row at a time so the board never has to fit
+ * in the Java heap.
+ */
+public class OffHeapBoard implements AutoCloseable
+{
+
+    private static final int TILE_BITS = 6;                   // a tile is 2^6 rows by one 64-bit word
+    private static final int TILE_SIZE = 1 << TILE_BITS;
+    private static final int SEGMENT_WORD_BITS = 26;          // 2^26 words = 512 MB per segment
+    private static final long SEGMENT_BYTES = 8L << SEGMENT_WORD_BITS;
+
+    private final int rows;
+    private final int cols;
+    private final int tileRows;
+    private final int tileCols;      // also the number of words per row
+    private final int tailBits;      // number of valid bits in the last word of a row (1..64)
+    private final long tailMask;
+
+    private LongBuffer[] cells;      // current generation, one view per segment
+    private LongBuffer[] next;       // scratch buffers the next generation is written into
+    private final FileChannel[] files; // backing files when memory-mapped, otherwise null
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+
+    private LifeRule rule = LifeRule.CONWAY;
+    private boolean toroidal = true;
+    private long totalAliveCells;
+
+    /**
+     * Creates an empty (all DEAD) board in direct memory. The two generations take
+     * rows * cols / 4 bytes, which must fit in -XX:MaxDirectMemorySize.
+     * @param rows number of rows in the board
+     * @param cols number of columns in the board
+     */
+    public OffHeapBoard (int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        checkSize();
+        tileRows = (rows + TILE_SIZE - 1) >>> TILE_BITS;
+        tileCols = (cols + 63) >>> 6;
+        tailBits = cols - ((tileCols - 1) << 6);
+        tailMask = tailBits == 64 ? -1L : (1L << tailBits) - 1;
+        files = null;
+        cells = allocate();
+        next = allocate();
+    }
+
+    /**
+     * Creates an empty (all DEAD) board whose two generation buffers are memory-mapped
+     * files in the given directory, so the board can be larger than physical memory
+     * @param rows number of rows in the board
+     * @param cols number of columns in the board
+     * @param directory where the generation files are created (existing files are overwritten)
+     */
+    public OffHeapBoard (int rows, int cols, Path directory) throws IOException {
+        this.rows = rows;
+        this.cols = cols;
+        checkSize();
+        tileRows = (rows + TILE_SIZE - 1) >>> TILE_BITS;
+        tileCols = (cols + 63) >>> 6;
+        tailBits = cols - ((tileCols - 1) << 6);
+        tailMask = tailBits == 64 ? -1L : (1L << tailBits) - 1;
+        Files.createDirectories(directory);
+        files = new FileChannel[2];
+        files[0] = openFile(directory.resolve("generation-a.bin"));
+        files[1] = openFile(directory.resolve("generation-b.bin"));
+        cells = map(files[0]);
+        next = map(files[1]);
+    }
+
+    /**
+     * Returns the number of rows
+     * @return int for number of rows in the board
+     */
+    public int getRows () {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns
+     * @return int for number of columns in the board
+     */
+    public int getCols () {
+        return cols;
+    }
+
+    /**
+     * Returns totalAliveCells
+     * @return long for total number of alive cells in the board
+     */
+    public long getTotalAliveCells () {
+        return totalAliveCells;
+    }
+
+    /**
+     * Returns true if there are any alive cells in the board
+     * @return true if there is at least one cell alive, otherwise returns false
+     */
+    public boolean isAlive () {
+        return totalAliveCells > 0;
+    }
+
+    /**
+     * Sets the birth/survival rule used to compute new generations
+     * @param rule the rule, for example LifeRule.parse("B36/S23")
+     */
+    public void setRule (LifeRule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Sets whether the edges of the board wrap around
+     * @param toroidal true for wraparound edges, false for DEAD edges
+     */
+    public void setToroidal (boolean toroidal) {
+        this.toroidal = toroidal;
+    }
+
+    /**
+     * Returns the status of the cell at (row,col): ALIVE or DEAD
+     * @param row row position of the cell
+     * @param col column position of the cell
+     * @return true or false value "ALIVE" or "DEAD" (state of the cell)
+     */
+    public boolean getCellState (int row, int col) {
+        checkCell(row, col);
+        return (get(cells, row, col >>> 6) & (1L << col)) != 0;
+    }
+
+    /**
+     * Sets the status of the cell at (row,col)
+     * @param row row position of the cell
+     * @param col column position of the cell
+     * @param alive true to make the cell ALIVE, false to make it DEAD
+     */
+    public void setCellState (int row, int col, boolean alive) {
+        checkCell(row, col);
+        long word = get(cells, row, col >>> 6);
+        long bit = 1L << col;
+        if (((word & bit) != 0) == alive) {
+            return;
+        }
+        set(cells, row, col >>> 6, word ^ bit);
+        totalAliveCells += alive ? 1 : -1;
+    }
+
+    /**
+     * Replaces the board with the pattern of a GameOfLife grid of the same size
+     * @param grid boolean grid where true denotes an ALIVE cell
+     */
+    public void setGrid (boolean[][] grid) {
+        if (grid.length != rows || grid[0].length != cols) {
+            throw new IllegalArgumentException("Grid is " + grid.length + "x" + grid[0].length
+                                               + " but the board is " + rows + "x" + cols);
+        }
+        long[] row = new long[tileCols];
+        for (int i = 0; i < rows; i++) {
+            Arrays.fill(row, 0L);
+            for (int j = 0; j < cols; j++) {
+                if (grid[i][j]) {
+                    row[j >>> 6] |= 1L << j;
+                }
+            }
+            writeRow(i, row, 0);
+        }
+        wordsChanged();
+    }
+
+    /**
+     * Returns a copy of the board in the GameOfLife grid representation
+     * @return boolean[][] where true denotes an ALIVE cell (this is a new 2D array)
+     */
+    public boolean[][] getGrid () {
+        boolean[][] grid = new boolean[rows][cols];
+        long[] row = new long[tileCols];
+        for (int i = 0; i < rows; i++) {
+            readRow(i, row, 0);
+            for (int j = 0; j < cols; j++) {
+                grid[i][j] = (row[j >>> 6] & (1L << j)) != 0;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Replaces the board with the cells, rule and edges of a BitBoard of the same size
+     * @param board the board to copy
+     */
+    public void copyFrom (BitBoard board) {
+        if (board.getRows() != rows || board.getCols() != cols) {
+            throw new IllegalArgumentException("BitBoard is " + board.getRows() + "x" + board.getCols()
+                                               + " but the board is " + rows + "x" + cols);
+        }
+        long[] words = board.words();
+        for (int i = 0; i < rows; i++) {
+            writeRow(i, words, i * tileCols);
+        }
+        wordsChanged();
+        rule = board.getRule();
+        toroidal = board.isToroidal();
+    }
+
+    /**
+     * Returns a BitBoard holding the cells, rule and edges of this board. The board
+     * must fit in the Java heap.
+     * @return BitBoard copy of the current generation
+     */
+    public BitBoard toBitBoard () {
+        BitBoard board = new BitBoard(rows, cols);
+        long[] words = board.words();
+        for (int i = 0; i < rows; i++) {
+            readRow(i, words, i * tileCols);
+        }
+        board.wordsChanged();
+        board.setRule(rule);
+        board.setToroidal(toroidal);
+        return board;
+    }
+
+    /**
+     * Advances the board by one generation, computing rows of tiles in parallel
+     */
+    public void nextGeneration () {
+        LongBuffer[] src = cells;
+        LongBuffer[] dst = next;
+        totalAliveCells = IntStream.range(0, tileRows).parallel()
+                                   .mapToLong(tileRow -> stepTileRow(src, dst, tileRow))
+                                   .sum();
+        cells = dst;
+        next = src;
+    }
+
+    /**
+     * Advances the board by multiple (n) generations
+     * @param n number of generations to advance
+     */
+    public void nextGeneration (int n) {
+        for (int i = 0; i < n; i++) {
+            nextGeneration();
+        }
+    }
+
+    /**
+     * Writes memory-mapped generations back to their files and releases the buffers.
+     * The board cannot be used afterwards.
+     */
+    @Override
+    public void close () throws IOException {
+        if (files != null) {
+            for (MappedByteBuffer segment : mapped) {
+                segment.force();
+            }
+            mapped.clear();
+            files[0].close();
+            files[1].close();
+        }
+        cells = null;
+        next = null;
+    }
+
+    /*
+     * Copies the words of one row of the current generation into dst, from offset on
+     */
+    void readRow (int row, long[] dst, int offset) {
+        for (int w = 0; w < tileCols; w++) {
+            dst[offset + w] = get(cells, row, w);
+        }
+    }
+
+    /*
+     * Replaces the words of one row of the current generation with those of src, from
+     * offset on. Call wordsChanged() after writing rows.
+     */
+    void writeRow (int row, long[] src, int offset) {
+        for (int w = 0; w < tileCols - 1; w++) {
+            set(cells, row, w, src[offset + w]);
+        }
+        set(cells, row, tileCols - 1, src[offset + tileCols - 1] & tailMask);
+    }
+
+    /*
+     * Recounts the alive cells after rows were written in bulk. The words past the last
+     * row or column are always zero, so every word of every segment can be counted.
+     */
+    void wordsChanged () {
+        long alive = 0;
+        for (LongBuffer segment : cells) {
+            for (int i = 0; i < segment.limit(); i++) {
+                alive += Long.bitCount(segment.get(i));
+            }
+        }
+        totalAliveCells = alive;
+    }
+
+    int getWordsPerRow () {
+        return tileCols;
+    }
+
+    /*
+     * Computes one row of tiles of the next generation, tile by tile
+     * @return number of alive cells in the computed rows
+     */
+    private long stepTileRow (LongBuffer[] src, LongBuffer[] dst, int tileRow) {
+        long alive = 0;
+        int firstRow = tileRow << TILE_BITS;
+        int lastRow = Math.min(firstRow + TILE_SIZE, rows);
+        for (int w = 0; w < tileCols; w++) {
+            for (int r = firstRow; r < lastRow; r++) {
+                int up = r > 0 ? r - 1 : (toroidal ? rows - 1 : -1);
+                int down = r < rows - 1 ? r + 1 : (toroidal ? 0 : -1);
+                long nw = 0, n = 0, ne = 0, sw = 0, s = 0, se = 0;
+                if (up >= 0) {
+                    n = get(src, up, w);
+                    nw = west(src, up, w, n);
+                    ne = east(src, up, w, n);
+                }
+                if (down >= 0) {
+                    s = get(src, down, w);
+                    sw = west(src, down, w, s);
+                    se = east(src, down, w, s);
+                }
+                long c = get(src, r, w);
+                long word = BitBoard.evolve(rule, nw, n, ne, west(src, r, w, c), c, east(src, r, w, c), sw, s, se);
+                if (w == tileCols - 1) {
+                    word &= tailMask;
+                }
+                set(dst, r, w, word);
+                alive += Long.bitCount(word);
+            }
+        }
+        return alive;
+    }
+
+    /*
+     * Word whose bit b holds the cell to the left of bit b of word w (whose value is word)
+     */
+    private long west (LongBuffer[] src, int row, int w, long word) {
+        long carry;
+        if (w > 0) {
+            carry = get(src, row, w - 1) >>> 63;
+        }
+        else if (toroidal) {
+            carry = (get(src, row, tileCols - 1) >>> (tailBits - 1)) & 1L;
+        }
+        else {
+            carry = 0;
+        }
+        return (word << 1) | carry;
+    }
+
+    /*
+     * Word whose bit b holds the cell to the right of bit b of word w (whose value is word)
+     */
+    private long east (LongBuffer[] src, int row, int w, long word) {
+        if (w < tileCols - 1) {
+            return (word >>> 1) | (get(src, row, w + 1) << 63);
+        }
+        if (!toroidal) {
+            return word >>> 1;
+        }
+        return (word >>> 1) | ((get(src, row, 0) & 1L) << (tailBits - 1));
+    }
+
+    /*
+     * Index of word w of a row: tiles are stored row of tiles by row of tiles, and each
+     * tile holds its 64 rows one after another
+     */
+    private long wordIndex (int row, int w) {
+        long tile = (long) (row >>> TILE_BITS) * tileCols + w;
+        return (tile << TILE_BITS) | (row & (TILE_SIZE - 1));
+    }
+
+    private long get (LongBuffer[] generation, int row, int w) {
+        long index = wordIndex(row, w);
+        return generation[(int) (index >>> SEGMENT_WORD_BITS)].get((int) (index & ((1L << SEGMENT_WORD_BITS) - 1)));
+    }
+
+    private void set (LongBuffer[] generation, int row, int w, long word) {
+        long index = wordIndex(row, w);
+        generation[(int) (index >>> SEGMENT_WORD_BITS)].put((int) (index & ((1L << SEGMENT_WORD_BITS) - 1)), word);
+    }
+
+    private long totalBytes () {
+        return ((long) tileRows * tileCols) << (TILE_BITS + 3);
+    }
+
+    /*
+     * Allocates one generation in direct memory, split into segments of at most SEGMENT_BYTES;
+     * throws OutOfMemoryError past -XX:MaxDirectMemorySize
+     */
+    private LongBuffer[] allocate () {
+        long total = totalBytes();
+        LongBuffer[] segments = new LongBuffer[(int) ((total + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+        for (int i = 0; i < segments.length; i++) {
+            int bytes = (int) Math.min(SEGMENT_BYTES, total - i * SEGMENT_BYTES);
+            segments[i] = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        return segments;
+    }
+
+    private static FileChannel openFile (Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /*
+     * Maps one generation file, split into segments of at most SEGMENT_BYTES. Mapping
+     * past the end of the new, empty file grows it and the new bytes read as zero (DEAD).
+     */
+    private LongBuffer[] map (FileChannel channel) throws IOException {
+        long total = totalBytes();
+        LongBuffer[] segments = new LongBuffer[(int) ((total + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+        for (int i = 0; i < segments.length; i++) {
+            long bytes = Math.min(SEGMENT_BYTES, total - i * SEGMENT_BYTES);
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, i * SEGMENT_BYTES, bytes);
+            segments[i] = segment.order(ByteOrder.nativeOrder()).asLongBuffer();
+            mapped.add(segment);
+        }
+        return segments;
+    }
+
+    private void checkSize () {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Board must have at least one row and one column");
+        }
+    }
+
+    private void checkCell (int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("Cell (" + row + "," + col + ") is outside the board");
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package warehouse;
+
+/**
+ * A sector of the warehouse: a min heap of products ordered by popularity, stored
+ * 1-indexed in an array, so the least popular product is always at index 1.
+ * The sector also keeps the index of every product by its id, updated on every
+ * swap, so a product is found in O(1) with indexOf().
+ */
+public class Sector {
+    private Product[] products;
+    private int currentSize;
+    private IntIntMap positions; // product id -> index in products
+
+    /**
+     * Initializes an empty sector with space for 5 products
+     */
+    public Sector() {
+        this(5);
+    }
+
+    /**
+     * Initializes an empty sector
+     * @param capacity The number of products the sector has space for
+     */
+    public Sector(int capacity) {
+        products = new Product[capacity + 1];
+        positions = new IntIntMap(capacity);
+    }
+
+    /**
+     * Adds a product at the end of the heap, without fixing the heap
+     * @param prod The product to add
+     */
+    public void add(Product prod) {
+        products[++currentSize] = prod;
+        positions.put(prod.getId(), currentSize);
+    }
+
+    /**
+     * Replaces the product at some index, without fixing the heap
+     * @param index The index to set, from 1
+     * @param prod The new product
+     */
+    public void set(int index, Product prod) {
+        if (products[index] != null) positions.remove(products[index].getId());
+        products[index] = prod;
+        positions.put(prod.getId(), index);
+    }
+
+    /**
+     * Removes the last product of the heap
+     */
+    public void deleteLast() {
+        positions.remove(products[currentSize].getId());
+        products[currentSize] = null;
+        currentSize--;
+    }
+
+    /**
+     * @param index The index of the product, from 1
+     */
+    public Product get(int index) {
+        return products[index];
+    }
+
+    /**
+     * Returns the index of the product with this id, or 0 if it is not in this sector
+     */
+    public int indexOf(int id) {
+        return positions.getOrDefault(id, 0);
+    }
+
+    public int getSize() {
+        return currentSize;
+    }
+
+    /**
+     * Returns the number of products the sector has space for
+     */
+    public int getCapacity() {
+        return products.length - 1;
+    }
+
+    /**
+     * Swaps the products at two indices
+     */
+    public void swap(int index1, int index2) {
+        Product temp = products[index1];
+        products[index1] = products[index2];
+        products[index2] = temp;
+        positions.put(products[index1].getId(), index1);
+        positions.put(products[index2].getId(), index2);
+    }
+
+    /**
+     * Moves the product at some index up while it is less popular than its parent
+     */
+    public void swim(int index) {
+        while (index > 1 && products[index / 2].getPopularity() > products[index].getPopularity()) {
+            swap(index, index / 2);
+            index /= 2;
+        }
+    }
+
+    /**
+     * Moves the product at some index down while it is more popular than a child
+     */
+    public void sink(int index) {
+        while (2 * index <= currentSize) {
+            int child = 2 * index;
+            if (child < currentSize && products[child + 1].getPopularity() < products[child].getPopularity()) child++;
+            if (products[index].getPopularity() <= products[child].getPopularity()) break;
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    /**
+     * Restores the heap order of the whole sector in O(n), after many products changed
+     */
+    public void heapify() {
+        for (int index = currentSize / 2; index >= 1; index--) sink(index);
+    }
+
+    public String toString() {
+        String sectorString = "[";
+        for (int i = 1; i <= currentSize; i++) {
+            sectorString += products[i].toString();
+            if (i < currentSize) sectorString += ", ";
+        }
+        return sectorString + "]";
+    }
+}
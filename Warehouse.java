@@ -1,5 +1,8 @@
 package warehouse;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 /*
  *
  * This class implements a warehouse on a Hash Table like structure, 
@@ -7,20 +10,59 @@ package warehouse;
  * Due to your limited space, you are unable to simply rehash to get more space. 
  * However, you can use your priority queue structure to delete less popular items 
  * and keep the space constant.
+ *
+ * The default warehouse has 10 sectors of 5 products and puts a product in sector
+ * id % 10. A warehouse built with a sector count and capacity instead hashes the id
+ * and takes the sector from the top bits of the hash, so runs of ids spread evenly.
+ * The low bits are left to the sectors' own id -> position maps, which probe from
+ * them; routing on the low bits would give every id in a sector the same home slots.
+ * Product ids are keys: adding a product whose id is already in the warehouse throws
+ * IllegalArgumentException and leaves the warehouse unchanged, so the product must be
+ * deleted (or evicted) before its id is added again.
  * 
  * completed by Noor Mashal (@author Ishaan Ivaturi)
  */ 
 public class Warehouse {
     private Sector[] sectors;
+    private IntIntMap productSectors; // product id -> index of the sector holding it
+    private int capacity;             // products per sector
+    private int mask;                 // sector count - 1, or -1 to use id % 10
+    private int shift;                // 32 - log2(sector count)
+
+    private static final int MOVED = -2; // marks a batch order whose product left its sector
     
     // Initializes every sector to an empty sector
     public Warehouse() {
         sectors = new Sector[10];
+        productSectors = new IntIntMap(50);
+        capacity = 5;
+        mask = -1;
 
         for (int i = 0; i < 10; i++) {
             sectors[i] = new Sector();
         }
     }
+
+    /**
+     * Initializes a warehouse of sectorCount empty sectors
+     * @param sectorCount The number of sectors, a power of two
+     * @param capacity The number of products a sector holds before it evicts one
+     */
+    public Warehouse(int sectorCount, int capacity) {
+        if (sectorCount <= 0 || (sectorCount & (sectorCount - 1)) != 0) {
+            throw new IllegalArgumentException("Sector count must be a power of two: " + sectorCount);
+        }
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        sectors = new Sector[sectorCount];
+        productSectors = new IntIntMap();
+        this.capacity = capacity;
+        mask = sectorCount - 1;
+        shift = Integer.numberOfLeadingZeros(sectorCount) + 1;
+
+        for (int i = 0; i < sectorCount; i++) {
+            sectors[i] = new Sector(capacity);
+        }
+    }
     
     /**
      * Provided method, code the parts to add their behavior
@@ -29,8 +71,10 @@ public class Warehouse {
      * @param stock The stock of the item to add
      * @param day The day of the item to add
      * @param demand Initial demand of the item to add
+     * @throws IllegalArgumentException if a product with this id is already in the warehouse
      */
     public void addProduct(int id, String name, int stock, int day, int demand) {
+        claimId(id, sectorIndex(id)); // before the eviction, so a rejected add changes nothing
         evictIfNeeded(id);
         addToEnd(id, name, stock, day, demand);
         fixHeap(id);
@@ -47,7 +91,7 @@ public class Warehouse {
      */
     private void addToEnd(int id, String name, int stock, int day, int demand) 
     {
-        sectors[(int)(id % 10)].add(new Product(id, name, stock, day, demand));
+        sectors[sectorIndex(id)].add(new Product(id, name, stock, day, demand));
         // IMPLEMENT THIS METHOD // Done
     }
 
@@ -58,22 +102,24 @@ public class Warehouse {
      */
     private void fixHeap(int id) 
     {
-        sectors[id%10].swim(sectors[(int)(id % 10)].getSize());
+        sectors[sectorIndex(id)].swim(sectors[sectorIndex(id)].getSize());
         // IMPLEMENT THIS METHOD // Done
     }
 
     /**
-     * Delete the least popular item in the correct sector, only if its size is 5 while maintaining heap
+     * Delete the least popular item in the correct sector, only if it is full while maintaining heap
      * Requires proper use of the .swap(), .deleteLast(), and .sink() methods in the Sector class
      * @param id The id of the item which is about to be added
      */
     private void evictIfNeeded(int id) 
     {
-        if(sectors[(int)(id % 10)].getSize() == 5) // checks if full 
+        Sector sector = sectors[sectorIndex(id)];
+        if(sector.getSize() == capacity) // checks if full 
         {
-            sectors[(int)(id % 10)].swap(5, 1); // swap first and last
-            sectors[(int)(id % 10)].deleteLast(); // deletes the last
-            sectors[(int)(id % 10)].sink(1); // sinks it 
+            unindexProduct(sector.get(1).getId()); // forgets the evicted product
+            sector.swap(capacity, 1); // swap first and last
+            sector.deleteLast(); // deletes the last
+            sector.sink(1); // sinks it 
         }
        // IMPLEMENT THIS METHOD // Done
     }
@@ -86,12 +132,10 @@ public class Warehouse {
      * @param amount The amount by which to update the stock
      */
     public void restockProduct(int id, int amount) {
-        for(int i = 1; i <= sectors[(int)(id % 10)].getSize(); i++)
+        Sector sector = findSector(id);
+        if (sector != null)
         {
-            if(sectors[(int)(id % 10)].get(i).getId() == id)
-            {
-                sectors[(int)(id % 10)].get(i).updateStock((int)(amount));
-            } 
+            sector.get(sector.indexOf(id)).updateStock(amount); // stock does not change popularity
         }
         // IMPLEMENT THIS METHOD // Done
     }
@@ -103,14 +147,18 @@ public class Warehouse {
      * @param id The id of the product to delete
      */
     public void deleteProduct(int id) {
-        for(int i = 1; i <= sectors[(int)(id % 10)].getSize(); i++)
+        Sector sector = findSector(id);
+        if (sector != null)
         {
-            if(sectors[(int)(id % 10)].get(i).getId() == id)
+            int i = sector.indexOf(id);
+            sector.swap(i, sector.getSize());
+            sector.deleteLast();
+            unindexProduct(id);
+            if (i <= sector.getSize()) // the last product moved into the hole, it may belong above or below it
             {
-                sectors[(int)(id % 10)].swap(i, sectors[(int)(id % 10)].getSize());
-                sectors[(int)(id % 10)].deleteLast();
-                sectors[(int)(id % 10)].sink(1);
-            } 
+                sector.sink(i);
+                sector.swim(i);
+            }
         }
         // IMPLEMENT THIS METHOD // Done
     }
@@ -124,22 +172,116 @@ public class Warehouse {
      * @param amount The amount purchased
      */
     public void purchaseProduct(int id, int day, int amount) {
-        for(int i = 1; i <= sectors[(id % 10)].getSize(); i++)
+        Sector sector = findSector(id);
+        if (sector == null) return;
+        int i = sector.indexOf(id);
+        Product product = sector.get(i);
+        if (product.getStock() >= amount)
         {
-            if(sectors[(id % 10)].get(i).getId() == id && sectors[(int)(id % 10)].get(i).getStock() >= amount)
-            {
-                sectors[(id % 10)].get(i).setLastPurchaseDay(day);
-                sectors[(id % 10)].get(i).updateStock((-amount));
-                sectors[(id % 10)].get(i).updateDemand((amount));
-                sectors[(id % 10)].sink(i);
-                break;
-
-            } 
-            fixHeap(id);
+            product.setLastPurchaseDay(day);
+            product.updateStock(-amount);
+            product.updateDemand(amount);
+            // popularity grows unless day is older than the last purchase, then the product moves up
+            sector.sink(i);
+            sector.swim(i);
         }
         // IMPLEMENT THIS METHOD // Done
     }
     
+    /**
+     * Simulate a batch of purchase orders, leaving every product as calling purchaseProduct()
+     * for each order in turn would. The orders are grouped by sector; each sector applies all of
+     * its orders and then fixes its heap once, and sectors are processed in parallel.
+     * @param ids The ids of the purchased products
+     * @param days The day of each order
+     * @param amounts The amount of each order
+     */
+    public void purchaseProducts(int[] ids, int[] days, int[] amounts) {
+        int n = ids.length;
+        if (days.length != n || amounts.length != n) throw new IllegalArgumentException("Order arrays differ in length");
+
+        // counting sort of the orders by sector, keeping their order within a sector
+        int[] orderSectors = new int[n];
+        int[] starts = new int[sectors.length + 1];
+        for (int i = 0; i < n; i++)
+        {
+            orderSectors[i] = sectorOf(ids[i]);
+            if (orderSectors[i] >= 0) starts[orderSectors[i] + 1]++;
+        }
+        for (int s = 0; s < sectors.length; s++) starts[s + 1] += starts[s];
+        int[] orders = new int[starts[sectors.length]];
+        int[] next = Arrays.copyOf(starts, sectors.length);
+        for (int i = 0; i < n; i++)
+        {
+            if (orderSectors[i] >= 0) orders[next[orderSectors[i]]++] = i;
+        }
+
+        IntStream.range(0, sectors.length).parallel().filter(s -> starts[s] < starts[s + 1]).forEach(s ->
+            withSector(s, () -> purchaseInSector(s, ids, days, amounts, orders, starts[s], starts[s + 1], orderSectors)));
+
+        // orders whose product left its sector before the sector was reached, only when used concurrently
+        for (int i = 0; i < n; i++)
+        {
+            if (orderSectors[i] == MOVED) purchaseProduct(ids[i], days[i], amounts[i]);
+        }
+    }
+
+    /*
+     * Applies orders[from..to) to one sector, then fixes its heap: by sinking each changed
+     * product from the bottom up if only a few changed and none lost popularity, else by
+     * rebuilding the whole heap
+     */
+    private void purchaseInSector(int s, int[] ids, int[] days, int[] amounts, int[] orders, int from, int to,
+                                  int[] orderSectors) {
+        Sector sector = sectors[s];
+        int[] changed = new int[to - from];
+        int count = 0;
+        boolean lessPopular = false;
+        for (int k = from; k < to; k++)
+        {
+            int order = orders[k];
+            int i = sector.indexOf(ids[order]);
+            if (i == 0)
+            {
+                orderSectors[order] = MOVED;
+                continue;
+            }
+            Product product = sector.get(i);
+            if (product.getStock() >= amounts[order])
+            {
+                int popularity = product.getPopularity();
+                product.setLastPurchaseDay(days[order]);
+                product.updateStock(-amounts[order]);
+                product.updateDemand(amounts[order]);
+                if (product.getPopularity() < popularity) lessPopular = true;
+                changed[count++] = i;
+            }
+        }
+        if (count == 0) return;
+
+        // k sinks cost about k log n, a rebuild about n
+        int size = sector.getSize();
+        if (lessPopular || (long) count * (32 - Integer.numberOfLeadingZeros(size)) >= size)
+        {
+            sector.heapify();
+        }
+        else
+        {
+            // sinking only moves products within the subtree below, so deeper products go first
+            Arrays.sort(changed, 0, count);
+            for (int k = count - 1; k >= 0; k--) sector.sink(changed[k]);
+        }
+    }
+
+    /**
+     * Runs an action that reads or changes only one sector; purchaseProducts() applies
+     * the orders of each sector through this
+     * @param sector The index of the sector
+     */
+    protected void withSector(int sector, Runnable action) {
+        action.run();
+    }
+
     /**
      * Construct a better scheme to add a product, where empty spaces are always filled
      * @param id The id of the item to add
@@ -147,39 +289,77 @@ public class Warehouse {
      * @param stock The stock of the item to add
      * @param day The day of the item to add
      * @param demand Initial demand of the item to add
+     * @throws IllegalArgumentException if a product with this id is already in the warehouse
      */
     public void betterAddProduct(int id, String name, int stock, int day, int demand) 
     {
-        if (sectors[(id % 10)].getSize() != 5) 
+        int home = sectorIndex(id);
+        // try the product's own sector, then the following sectors in order, wrapping around
+        for (int i = 0; i < sectors.length; i++)
         {
-            addProduct(id, name, stock, day, demand);
+            int start = home + i < sectors.length ? home + i : home + i - sectors.length;
+            if (addIfRoom(start, id, name, stock, day, demand)) return;
         }
-        else
-        {
-            int oG = id % 10;
-            int start = oG + 1;
-            if(start == 10) start = 0;
-            while (start != oG)
-            {
-                if((sectors[(start)].getSize() != 5))
-                {
-                    sectors[(int)(start)].add(new Product(id, name, stock, day, demand));
-                    sectors[start].swim(sectors[(int)(start)].getSize());
-                    break;
-                }
-                if(start == 9) start = 0;
-                else start++;
-                if (start == oG)
-                {
-                    addProduct(start, name, stock, day, demand);
-                    break;
-                }
-            }
+        addProduct(id, name, stock, day, demand); // every sector is full, evict from the product's own sector
+        // IMPLEMENT THIS METHOD
+    }
 
+    /**
+     * Adds a product to some sector and fixes its heap, unless the sector is full
+     * @param sector The index of the sector
+     * @return true if the product was added
+     * @throws IllegalArgumentException if a product with this id is already in the warehouse
+     */
+    protected boolean addIfRoom(int sector, int id, String name, int stock, int day, int demand) {
+        if (sectors[sector].getSize() == capacity) return false;
+        claimId(id, sector);
+        sectors[sector].add(new Product(id, name, stock, day, demand));
+        sectors[sector].swim(sectors[sector].getSize());
+        return true;
+    }
 
+    /**
+     * Returns the index of the sector a new product with this id belongs to
+     */
+    protected int sectorIndex(int id) {
+        // with one sector the shift is 32, which Java treats as 0, so the mask is still needed
+        return mask < 0 ? id % 10 : (IntIntMap.mix(id) >>> shift) & mask;
+    }
 
-        }
-        // IMPLEMENT THIS METHOD
+    /**
+     * Returns the index of the sector holding the product with this id, or -1 if there is none
+     */
+    protected int sectorOf(int id) {
+        return productSectors.getOrDefault(id, -1);
+    }
+
+    /**
+     * Records that the product with this id is now in some sector, unless the id is
+     * already recorded
+     * @return false if the id was already recorded, with its sector unchanged
+     */
+    protected boolean indexProduct(int id, int sector) {
+        return productSectors.putIfAbsent(id, sector);
+    }
+
+    /**
+     * Forgets the sector of the product with this id, after it was removed
+     */
+    protected void unindexProduct(int id) {
+        productSectors.remove(id);
+    }
+
+    /*
+     * Records the sector of a product about to be added there, or throws if its id is
+     * already in the warehouse
+     */
+    private void claimId(int id, int sector) {
+        if (!indexProduct(id, sector)) throw new IllegalArgumentException("Product id already in the warehouse: " + id);
+    }
+
+    private Sector findSector(int id) {
+        int sector = sectorOf(id);
+        return sector < 0 ? null : sectors[sector];
     }
 
     /*
@@ -188,7 +368,7 @@ public class Warehouse {
     public String toString() {
         String warehouseString = "[\n";
 
-        for (int i = 0; i < 10; i++) {
+        for (int i = 0; i < sectors.length; i++) {
             warehouseString += "\t" + sectors[i].toString() + "\n";
         }
         
@@ -201,4 +381,15 @@ public class Warehouse {
     public Sector[] getSectors () {
         return sectors;
     }
+
+    /**
+     * Returns the sector at some index itself, for subclasses that change what getSectors() returns
+     */
+    protected Sector getSector(int index) {
+        return sectors[index];
+    }
+
+    protected int getSectorCount() {
+        return sectors.length;
+    }
 }
@@ -0,0 +1,76 @@
+package warehouse;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks for lookups by id in a warehouse of 2^20 products, split into 1 up to
+ * 65536 sectors. Every operation finds a random product through the id -> sector index
+ * and then the sector's id -> position map, so the time per operation should stay about
+ * the same however many sectors there are; it grows with the sector count if the keys
+ * of a sector cluster in its position map.
+ *
+ * Requires jmh-core and jmh-generator-annprocess on the classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class WarehouseBenchmark {
+    private static final long SEED = 112L;
+    private static final int PRODUCTS = 1 << 20;
+
+    @Param({"1", "1024", "65536"})
+    public int sectors;
+
+    private Warehouse warehouse;
+    private int[] ids;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        warehouse = new Warehouse(sectors, 2 * PRODUCTS / sectors);
+        for (int id = 1; id <= PRODUCTS; id++) warehouse.betterAddProduct(id, "p" + id, 100, 0, 1);
+        Random random = new Random(SEED);
+        ids = new int[1 << 16];
+        for (int i = 0; i < ids.length; i++) ids[i] = 1 + random.nextInt(PRODUCTS);
+    }
+
+    @Benchmark
+    public void restockProduct() {
+        warehouse.restockProduct(nextId(), 1);
+    }
+
+    @Benchmark
+    public void purchaseProduct() {
+        warehouse.purchaseProduct(nextId(), 1, 0);
+    }
+
+    private int nextId() {
+        next = (next + 1) & (ids.length - 1);
+        return ids[next];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WarehouseBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}